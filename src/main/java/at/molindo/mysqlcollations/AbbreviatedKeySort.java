@@ -0,0 +1,128 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+/**
+ * stable merge sort of strings on their abbreviated keys, falling back to a
+ * full compare for equal keys only
+ * 
+ * @see MySqlCollator#abbreviatedKey(CharSequence)
+ */
+final class AbbreviatedKeySort {
+
+	/**
+	 * ranges up to this size are sorted by insertion sort
+	 */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private final MySqlCollator _collator;
+
+	/**
+	 * abbreviated keys with flipped sign bit, hence signed comparison of keys
+	 * equals unsigned comparison of abbreviated keys
+	 */
+	private final long[] _keys;
+	private final String[] _values;
+
+	private final long[] _tmpKeys;
+	private final String[] _tmpValues;
+
+	private AbbreviatedKeySort(final MySqlCollator collator, final String[] values) {
+		_collator = collator;
+		_values = values;
+		_keys = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			_keys[i] = collator.abbreviatedKey(values[i]) ^ Long.MIN_VALUE;
+		}
+		_tmpKeys = new long[values.length];
+		_tmpValues = new String[values.length];
+	}
+
+	/**
+	 * sort range of strings
+	 */
+	static void sort(final MySqlCollator collator, final String[] strings, final int from, final int to) {
+		if (from < 0 || to > strings.length || from > to) {
+			throw new ArrayIndexOutOfBoundsException("from=" + from + ", to=" + to + ", length=" + strings.length);
+		}
+		final String[] values = new String[to - from];
+		System.arraycopy(strings, from, values, 0, values.length);
+
+		new AbbreviatedKeySort(collator, values).sort(0, values.length);
+
+		System.arraycopy(values, 0, strings, from, values.length);
+	}
+
+	private void sort(final int from, final int to) {
+		if (to - from <= INSERTION_SORT_THRESHOLD) {
+			insertionSort(from, to);
+			return;
+		}
+
+		final int mid = (from + to) >>> 1;
+		sort(from, mid);
+		sort(mid, to);
+
+		if (compare(_keys[mid - 1], _values[mid - 1], _keys[mid], _values[mid]) <= 0) {
+			// already in order
+			return;
+		}
+		merge(from, mid, to);
+	}
+
+	private void insertionSort(final int from, final int to) {
+		final long[] keys = _keys;
+		final String[] values = _values;
+		for (int i = from + 1; i < to; i++) {
+			final long key = keys[i];
+			final String value = values[i];
+			int j = i - 1;
+			while (j >= from && compare(keys[j], values[j], key, value) > 0) {
+				keys[j + 1] = keys[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			keys[j + 1] = key;
+			values[j + 1] = value;
+		}
+	}
+
+	private void merge(final int from, final int mid, final int to) {
+		final long[] keys = _keys;
+		final String[] values = _values;
+		System.arraycopy(keys, from, _tmpKeys, from, to - from);
+		System.arraycopy(values, from, _tmpValues, from, to - from);
+
+		int i = from, j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || i < mid && compare(_tmpKeys[i], _tmpValues[i], _tmpKeys[j], _tmpValues[j]) <= 0) {
+				keys[k] = _tmpKeys[i];
+				values[k] = _tmpValues[i++];
+			} else {
+				keys[k] = _tmpKeys[j];
+				values[k] = _tmpValues[j++];
+			}
+		}
+	}
+
+	private int compare(final long key1, final String value1, final long key2, final String value2) {
+		if (key1 != key2) {
+			return key1 < key2 ? -1 : 1;
+		}
+		return _collator.compare(value1, value2);
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * base of probabilistic structures hashing collation weights, serialized with
+ * a header identifying their collation
+ */
+abstract class CollatedSketch {
+
+	/**
+	 * version 2 added fingerprint of collation tables
+	 */
+	private static final int VERSION = 2;
+
+	private final MySqlCollator _collator;
+
+	CollatedSketch(final MySqlCollator collator) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		_collator = collator;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if other sketch hashes strings differently, sketches of
+	 *             equal tables from different factories are compatible
+	 */
+	final void checkCompatible(final CollatedSketch other) {
+		if (!isCompatible(_collator, other._collator)) {
+			throw new IllegalArgumentException("incompatible collators: " + _collator + " and " + other._collator);
+		}
+	}
+
+	private static boolean isCompatible(final MySqlCollator c1, final MySqlCollator c2) {
+		return c1.getCollation().isEquivalent(c2.getCollation())
+				&& c1.getUnmappablePolicy() == c2.getUnmappablePolicy();
+	}
+
+	public abstract void writeTo(DataOutput out) throws IOException;
+
+	/**
+	 * @return compact binary form, as written by {@link #writeTo(DataOutput)}
+	 */
+	public final byte[] toByteArray() {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			writeTo(new DataOutputStream(out));
+		} catch (final IOException e) {
+			throw new RuntimeException("writing to memory failed", e);
+		}
+		return out.toByteArray();
+	}
+
+	static DataInput toDataInput(final byte[] bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	final void writeHeader(final DataOutput out, final int magic) throws IOException {
+		out.writeInt(magic);
+		out.writeByte(VERSION);
+		out.writeUTF(_collator.getCharset().getName());
+		out.writeUTF(_collator.getCollation().getName());
+		out.writeUTF(_collator.getUnmappablePolicy().name());
+		out.writeLong(_collator.getCollation().getFingerprint());
+	}
+
+	/**
+	 * @throws IOException
+	 *             if header doesn't match given type
+	 * @throws IllegalArgumentException
+	 *             if sketch was written using another collation or policy
+	 */
+	static void readHeader(final DataInput in, final int magic, final MySqlCollator collator) throws IOException {
+		if (in.readInt() != magic) {
+			throw new IOException("unexpected sketch type");
+		}
+		final int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("unsupported sketch version: " + version);
+		}
+		final String charset = in.readUTF();
+		final String collation = in.readUTF();
+		final String policy = in.readUTF();
+		final long fingerprint = in.readLong();
+		if (!charset.equals(collator.getCharset().getName()) || !collation.equals(collator.getCollation().getName())
+				|| !policy.equals(collator.getUnmappablePolicy().name())
+				|| fingerprint != collator.getCollation().getFingerprint()) {
+			throw new IllegalArgumentException("sketch of " + charset + "/" + collation + "/" + policy
+					+ " incompatible with " + collator);
+		}
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import edu.umd.cs.findbugs.annotations.SuppressWarnings;
+
+/**
+ * {@link MySqlCollator} for binary collations and collations using the
+ * character index as weight
+ * 
+ * @see MySqlCollation#isIdentity()
+ */
+final class IdentityMySqlCollator extends MySqlCollator {
+
+	private static final long serialVersionUID = 1L;
+
+	private final MySqlCharset _charset;
+
+	IdentityMySqlCollator(final MySqlCollation collation, final UnmappableCharacterPolicy policy) {
+		super(collation, policy);
+		if (!collation.isIdentity()) {
+			throw new IllegalArgumentException("not an identity collation: " + collation);
+		}
+		_charset = collation.getCharset();
+	}
+
+	@SuppressWarnings(value = "ES_COMPARING_PARAMETER_STRING_WITH_EQ", justification = "performance optimization only")
+	@Override
+	public int compare(final String source, final String target) {
+		if (source == target) {
+			return 0;
+		}
+		final int length = Math.min(source.length(), target.length());
+		int i = 0;
+		if (getUnmappablePolicy() == UnmappableCharacterPolicy.FAIL) {
+			// unmappable characters must fail even if equal
+			char c;
+			while (i < length && (c = source.charAt(i)) == target.charAt(i)
+					&& _charset.indexOf(c) != MySqlCharset.UNMAPPABLE) {
+				i++;
+			}
+		} else {
+			while (i < length && source.charAt(i) == target.charAt(i)) {
+				i++;
+			}
+		}
+		if (i < length) {
+			final int sIndex = _charset.indexOf(source.charAt(i));
+			final int tIndex = _charset.indexOf(target.charAt(i));
+			if (sIndex != MySqlCharset.UNMAPPABLE && tIndex != MySqlCharset.UNMAPPABLE) {
+				return sIndex - tIndex;
+			}
+		} else if (getUnmappablePolicy() != UnmappableCharacterPolicy.SKIP) {
+			// shorter is first
+			return source.length() - target.length();
+		}
+		// apply unmappable policy
+		return super.compare(source, target);
+	}
+
+	@Override
+	public String normalize(final String string) {
+		if (string != null && _charset.isMappable(string)) {
+			// lowest character of same weight is character itself
+			return string;
+		}
+		return super.normalize(string);
+	}
+
+	@Override
+	public String toString() {
+		return "IdentityMySqlCollator [collation=" + getCollation() + ", policy=" + getUnmappablePolicy() + "]";
+	}
+}
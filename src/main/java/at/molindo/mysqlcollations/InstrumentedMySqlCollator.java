@@ -0,0 +1,272 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.ObjectStreamException;
+
+/**
+ * {@link MySqlCollator} reporting to a {@link MySqlCollatorMetrics} listener
+ * 
+ * @see MySqlCollator#instrument(MySqlCollatorMetrics)
+ */
+public class InstrumentedMySqlCollator extends MySqlCollator {
+
+	private static final long serialVersionUID = 1L;
+
+	private final MySqlCollator _collator;
+	private final transient MySqlCollatorMetrics _metrics;
+
+	public InstrumentedMySqlCollator(final MySqlCollator collator, final MySqlCollatorMetrics metrics) {
+		super(collator.getCollation(), collator.getUnmappablePolicy());
+		if (metrics == null) {
+			throw new NullPointerException("metrics");
+		}
+		_collator = collator;
+		_metrics = metrics;
+	}
+
+	@Override
+	public int compare(final String source, final String target) {
+		compared(source, target);
+		try {
+			return _collator.compare(source, target);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public boolean equals(final String source, final String target) {
+		compared(source, target);
+		try {
+			return _collator.equals(source, target);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public MySqlCollationKey getCollationKey(final String source) {
+		_metrics.keyCreated(getCollation(), source.length());
+		unmappable(source);
+		try {
+			return _collator.getCollationKey(source);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public String normalize(final String string) {
+		unmappable(string);
+		try {
+			return _collator.normalize(string);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public int compare(final CharSequence source, final CharSequence target) {
+		compared(source, target);
+		try {
+			return _collator.compare(source, target);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public int compare(final char[] source, final int sOffset, final int sLength, final char[] target,
+			final int tOffset, final int tLength) {
+		compared(source, sOffset, sLength, target, tOffset, tLength);
+		try {
+			return _collator.compare(source, sOffset, sLength, target, tOffset, tLength);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public boolean equals(final CharSequence source, final CharSequence target) {
+		compared(source, target);
+		try {
+			return _collator.equals(source, target);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public boolean equals(final char[] source, final int sOffset, final int sLength, final char[] target,
+			final int tOffset, final int tLength) {
+		compared(source, sOffset, sLength, target, tOffset, tLength);
+		try {
+			return _collator.equals(source, sOffset, sLength, target, tOffset, tLength);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public MySqlCollationKey getCollationKey(final CharSequence source) {
+		_metrics.keyCreated(getCollation(), source.length());
+		unmappable(source);
+		try {
+			return _collator.getCollationKey(source);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public MySqlCollationKey getCollationKey(final char[] source, final int offset, final int length) {
+		_metrics.keyCreated(getCollation(), length);
+		unmappable(source, offset, length);
+		try {
+			return _collator.getCollationKey(source, offset, length);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public String normalize(final CharSequence string) {
+		unmappable(string);
+		try {
+			return _collator.normalize(string);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public String normalize(final char[] string, final int offset, final int length) {
+		unmappable(string, offset, length);
+		try {
+			return _collator.normalize(string, offset, length);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public int hash(final CharSequence string) {
+		hashed(string);
+		try {
+			return _collator.hash(string);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	long longHash(final CharSequence string) {
+		hashed(string);
+		try {
+			return _collator.longHash(string);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	@Override
+	public long abbreviatedKey(final CharSequence string) {
+		hashed(string);
+		try {
+			return _collator.abbreviatedKey(string);
+		} catch (final UnmappableCharacterException e) {
+			throw unmappable(e);
+		}
+	}
+
+	private void compared(final CharSequence source, final CharSequence target) {
+		_metrics.compared(getCollation(), source.length(), target.length());
+		unmappable(source);
+		unmappable(target);
+	}
+
+	private void compared(final char[] source, final int sOffset, final int sLength, final char[] target,
+			final int tOffset, final int tLength) {
+		_metrics.compared(getCollation(), sLength, tLength);
+		unmappable(source, sOffset, sLength);
+		unmappable(target, tOffset, tLength);
+	}
+
+	private void hashed(final CharSequence string) {
+		_metrics.hashed(getCollation(), string.length());
+		unmappable(string);
+	}
+
+	/**
+	 * report unmappable characters replaced or skipped according to policy,
+	 * unmappable characters are reported by their exception for
+	 * {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	private void unmappable(final CharSequence string) {
+		if (string != null && getUnmappablePolicy() != UnmappableCharacterPolicy.FAIL) {
+			final MySqlCharset charset = getCharset();
+			for (int i = 0; i < string.length(); i++) {
+				final char c = string.charAt(i);
+				if (charset.indexOf(c) == MySqlCharset.UNMAPPABLE) {
+					_metrics.unmappable(charset, c);
+				}
+			}
+		}
+	}
+
+	private void unmappable(final char[] string, final int offset, final int length) {
+		if (getUnmappablePolicy() != UnmappableCharacterPolicy.FAIL) {
+			final MySqlCharset charset = getCharset();
+			final int end = Math.min(offset + length, string.length);
+			for (int i = Math.max(offset, 0); i < end; i++) {
+				if (charset.indexOf(string[i]) == MySqlCharset.UNMAPPABLE) {
+					_metrics.unmappable(charset, string[i]);
+				}
+			}
+		}
+	}
+
+	private UnmappableCharacterException unmappable(final UnmappableCharacterException e) {
+		_metrics.unmappable(e.getCharset(), e.getCharacter());
+		return e;
+	}
+
+	@Override
+	public MySqlCollator withUnmappablePolicy(final UnmappableCharacterPolicy policy) {
+		return policy == getUnmappablePolicy() ? this : _collator.withUnmappablePolicy(policy).instrument(_metrics);
+	}
+
+	@Override
+	public InstrumentedMySqlCollator instrument(final MySqlCollatorMetrics metrics) {
+		return new InstrumentedMySqlCollator(_collator, metrics);
+	}
+
+	public MySqlCollatorMetrics getMetrics() {
+		return _metrics;
+	}
+
+	@Override
+	public final Object writeReplace() throws ObjectStreamException {
+		return _collator;
+	}
+
+	@Override
+	public String toString() {
+		return "InstrumentedMySqlCollator [collator=" + _collator + ", metrics=" + _metrics + "]";
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Bloom filter of strings equal according to a {@link MySqlCollator}
+ */
+public final class MySqlBloomFilter extends CollatedSketch {
+
+	private static final int MAGIC = 0x4D59424C; // MYBL
+
+	/**
+	 * hash count is written as unsigned byte
+	 */
+	private static final int MAX_HASH_COUNT = 0xFF;
+
+	private final long[] _bits;
+	private final long _bitCount;
+	private final int _hashCount;
+
+	/**
+	 * @param expectedInsertions
+	 *            expected number of distinct strings
+	 * @param falsePositiveProbability
+	 *            probability of false positives at expected insertions, &gt; 0
+	 *            and &lt; 1
+	 */
+	public MySqlBloomFilter(final MySqlCollator collator, final long expectedInsertions,
+			final double falsePositiveProbability) {
+		this(collator, bitCount(expectedInsertions, falsePositiveProbability), hashCount(expectedInsertions,
+				falsePositiveProbability));
+	}
+
+	private MySqlBloomFilter(final MySqlCollator collator, final long bitCount, final int hashCount) {
+		this(collator, new long[(int) ((bitCount + Long.SIZE - 1) / Long.SIZE)], hashCount);
+	}
+
+	private MySqlBloomFilter(final MySqlCollator collator, final long[] bits, final int hashCount) {
+		super(collator);
+		if (hashCount < 1 || hashCount > MAX_HASH_COUNT) {
+			throw new IllegalArgumentException("hashCount must be between 1 and " + MAX_HASH_COUNT + ": "
+					+ hashCount);
+		}
+		_bits = bits;
+		_bitCount = (long) bits.length * Long.SIZE;
+		_hashCount = hashCount;
+	}
+
+	private static long bitCount(final long expectedInsertions, final double falsePositiveProbability) {
+		checkArguments(expectedInsertions, falsePositiveProbability);
+		final double bits = -expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+		if (bits > (double) Integer.MAX_VALUE * Long.SIZE) {
+			throw new IllegalArgumentException("filter too large: " + (long) bits + " bits");
+		}
+		return Math.max(Long.SIZE, (long) Math.ceil(bits));
+	}
+
+	private static int hashCount(final long expectedInsertions, final double falsePositiveProbability) {
+		final double bits = bitCount(expectedInsertions, falsePositiveProbability);
+		final long hashCount = Math.round(bits / expectedInsertions * Math.log(2));
+		return (int) Math.min(MAX_HASH_COUNT, Math.max(1, hashCount));
+	}
+
+	private static void checkArguments(final long expectedInsertions, final double falsePositiveProbability) {
+		if (expectedInsertions <= 0) {
+			throw new IllegalArgumentException("expectedInsertions must be > 0: " + expectedInsertions);
+		}
+		if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+			throw new IllegalArgumentException("falsePositiveProbability must be > 0 and < 1: "
+					+ falsePositiveProbability);
+		}
+	}
+
+	/**
+	 * @return true if filter changed, i.e. string wasn't contained before
+	 */
+	public boolean add(final CharSequence string) {
+		final long hash = getCollator().longHash(string);
+		final long h1 = hash >>> 32;
+		final long h2 = hash & 0xFFFFFFFFL;
+
+		boolean changed = false;
+		for (int i = 0; i < _hashCount; i++) {
+			final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % _bitCount;
+			final int word = (int) (bit >>> 6);
+			final long mask = 1L << bit;
+			if ((_bits[word] & mask) == 0) {
+				_bits[word] |= mask;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @return false if string (or any string equal according to collator) was
+	 *         never added, true if it might have been added
+	 */
+	public boolean mightContain(final CharSequence string) {
+		final long hash = getCollator().longHash(string);
+		final long h1 = hash >>> 32;
+		final long h2 = hash & 0xFFFFFFFFL;
+
+		for (int i = 0; i < _hashCount; i++) {
+			final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % _bitCount;
+			if ((_bits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * add all strings of other filter to this filter
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if filters use different collators or sizes
+	 */
+	public void merge(final MySqlBloomFilter other) {
+		checkCompatible(other);
+		if (other._bits.length != _bits.length || other._hashCount != _hashCount) {
+			throw new IllegalArgumentException("can't merge filters of different size");
+		}
+		for (int i = 0; i < _bits.length; i++) {
+			_bits[i] |= other._bits[i];
+		}
+	}
+
+	/**
+	 * @return estimated probability of false positives given the current fill
+	 *         rate
+	 */
+	public double getFalsePositiveProbability() {
+		long set = 0;
+		for (final long word : _bits) {
+			set += Long.bitCount(word);
+		}
+		return Math.pow((double) set / _bitCount, _hashCount);
+	}
+
+	public long getBitCount() {
+		return _bitCount;
+	}
+
+	public int getHashCount() {
+		return _hashCount;
+	}
+
+	@Override
+	public void writeTo(final DataOutput out) throws IOException {
+		writeHeader(out, MAGIC);
+		out.writeByte(_hashCount);
+		out.writeInt(_bits.length);
+		for (final long word : _bits) {
+			out.writeLong(word);
+		}
+	}
+
+	/**
+	 * @return filter read from stream written by {@link #writeTo(DataOutput)}
+	 * @throws IllegalArgumentException
+	 *             if filter was written using another collation or policy
+	 */
+	public static MySqlBloomFilter readFrom(final DataInput in, final MySqlCollator collator) throws IOException {
+		readHeader(in, MAGIC, collator);
+		final int hashCount = in.readUnsignedByte();
+		final int words = in.readInt();
+		if (hashCount == 0 || words <= 0) {
+			throw new IOException("invalid bloom filter");
+		}
+		final long[] bits = new long[words];
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] = in.readLong();
+		}
+		return new MySqlBloomFilter(collator, bits, hashCount);
+	}
+
+	/**
+	 * @return filter from bytes returned by {@link #toByteArray()}
+	 */
+	public static MySqlBloomFilter fromByteArray(final byte[] bytes, final MySqlCollator collator) throws IOException {
+		return readFrom(toDataInput(bytes), collator);
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlBloomFilter [bits=" + _bitCount + ", hashes=" + _hashCount + ", collator=" + getCollator() + "]";
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.xml.sax.SAXException;
+
+/**
+ * charsets bundled as classpath resource {@value #RESOURCE}, generated at
+ * build time using {@link #main(String[])} if enabled (build profile
+ * bundle-charsets)
+ */
+public final class MySqlBundledCharsets {
+
+	public static final String RESOURCE = "/at/molindo/mysqlcollations/charsets.tables";
+
+	private static final MySqlCollatorFactory FACTORY = loadResource();
+
+	private MySqlBundledCharsets() {
+	}
+
+	/**
+	 * write charsets of given directory (or default directory) to given file,
+	 * to be bundled as resource {@value #RESOURCE}
+	 * 
+	 * @param args
+	 *            output file and optional charset directory
+	 * @throws IllegalArgumentException
+	 *             for invalid arguments
+	 */
+	public static void main(final String[] args) throws IOException, SAXException {
+		if (args.length < 1 || args.length > 2) {
+			throw new IllegalArgumentException("usage: " + MySqlBundledCharsets.class.getName()
+					+ " <outputFile> [charsetDir]");
+		}
+		final MySqlCollatorFactory factory = args.length > 1 ? MySqlCollatorFactory.parse(args[1])
+				: MySqlCollatorFactory.parseDefaultDirectory();
+		factory.writeTables(new File(args[0]));
+	}
+
+	/**
+	 * @return true if charsets are bundled
+	 */
+	public static boolean isAvailable() {
+		return FACTORY != null;
+	}
+
+	/**
+	 * @return factory of bundled charsets
+	 * @throws IllegalStateException
+	 *             if resource {@value #RESOURCE} isn't available
+	 */
+	public static MySqlCollatorFactory getFactory() {
+		if (FACTORY == null) {
+			throw new IllegalStateException("no bundled charsets, missing resource " + RESOURCE);
+		}
+		return FACTORY;
+	}
+
+	/**
+	 * @return factory from resource or null if not available
+	 */
+	private static MySqlCollatorFactory loadResource() {
+		final InputStream in = MySqlBundledCharsets.class.getResourceAsStream(RESOURCE);
+		if (in == null) {
+			return null;
+		}
+		try {
+			return load(in);
+		} catch (final IOException e) {
+			throw new IllegalStateException("failed to load bundled charsets from " + RESOURCE, e);
+		}
+	}
+
+	/**
+	 * @return factory read from given stream in binary table format, closes
+	 *         stream
+	 */
+	static MySqlCollatorFactory load(final InputStream in) throws IOException {
+		try {
+			// read to heap instead of mapping, allowing factory to be part of
+			// an image heap
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+			final byte[] buf = new byte[8192];
+			int read;
+			while ((read = in.read(buf)) != -1) {
+				out.write(buf, 0, read);
+			}
+			return MySqlCollatorFactory.read(ByteBuffer.wrap(out.toByteArray()));
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -16,7 +16,14 @@
 
 package at.molindo.mysqlcollations;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -29,6 +36,18 @@ public class MySqlCharset implements Serializable {
 
 	public static final int MAX_CHARACTERS = 256;
 
+	/*
+	 * ctype flags as used by MySQL
+	 */
+	public static final int CTYPE_UPPER = 0x01;
+	public static final int CTYPE_LOWER = 0x02;
+	public static final int CTYPE_DIGIT = 0x04;
+	public static final int CTYPE_PRINTER_CONTROL = 0x08;
+	public static final int CTYPE_NOT_WHITE_NOT_WORD = 0x10;
+	public static final int CTYPE_CONTROL = 0x20;
+	public static final int CTYPE_SPACE = 0x40;
+	public static final int CTYPE_HEX = 0x80;
+
 	private final String _name;
 	private final byte[] _ctypes;
 	private final char[] _chars;
@@ -38,28 +57,112 @@ public class MySqlCharset implements Serializable {
 	private final HashMap<String, MySqlCollation> _collations = new HashMap<String, MySqlCollation>();
 
 	/**
-	 * char translates to index
+	 * index returned by {@link #indexOf(char)} for unmappable characters
+	 */
+	static final int UNMAPPABLE = MAX_CHARACTERS;
+
+	/**
+	 * char translates to index, paged by high byte of char ({@link #UNMAPPABLE}
+	 * for unmappable characters, pages without any mappable character share a
+	 * single page)
+	 */
+	private final short[][] _charIndexes;
+
+	/**
+	 * char translates to lower/upper case char, paged like
+	 * {@link #_charIndexes} (null pages for pages without any mappable
+	 * character, unmappable characters translate to themselves)
+	 */
+	private final char[][] _lowerChars;
+	private final char[][] _upperChars;
+
+	/**
+	 * char translates to ctype, paged like {@link #_lowerChars} (0 for
+	 * unmappable characters)
 	 */
-	private final Map<Character, Integer> _charIndexes;
+	private final byte[][] _ctypeChars;
+
+	/**
+	 * index translates to lower/upper case index
+	 */
+	private final byte[] _lowerIndexes;
+	private final byte[] _upperIndexes;
 
 	public MySqlCharset(MySqlCharsetBean charset) {
-		_name = charset.getName();
-		_ctypes = MySqlCharsetUtils.toByteArray(charset.getCtype().getMap());
-		_chars = MySqlCharsetUtils.toCharArray(charset.getUnicode().getMap());
-		_upper = MySqlCharsetUtils.toIntArray(charset.getUpper().getMap());
-		_lower = MySqlCharsetUtils.toIntArray(charset.getUpper().getMap());
+		this(charset.getName(), MySqlCharsetUtils.toByteArray(charset.getCtype().getMap()), MySqlCharsetUtils
+				.toCharArray(charset.getUnicode().getMap()), MySqlCharsetUtils.toIntArray(charset.getUpper().getMap()),
+				MySqlCharsetUtils.toIntArray(charset.getLower().getMap()), toWeights(charset));
+	}
+
+	/**
+	 * @param weights
+	 *            weights mapped by collation name, null weights for binary
+	 *            collations
+	 */
+	MySqlCharset(String name, byte[] ctypes, char[] chars, int[] upper, int[] lower, Map<String, byte[]> weights) {
+		_name = name;
+		_ctypes = ctypes;
+		_chars = chars;
+		_upper = upper;
+		_lower = lower;
+
+		final short[] unmappable = new short[MAX_CHARACTERS];
+		Arrays.fill(unmappable, (short) UNMAPPABLE);
+
+		_charIndexes = new short[MAX_CHARACTERS][];
+		Arrays.fill(_charIndexes, unmappable);
+		_lowerChars = new char[MAX_CHARACTERS][];
+		_upperChars = new char[MAX_CHARACTERS][];
+		_ctypeChars = new byte[MAX_CHARACTERS][];
+		_lowerIndexes = new byte[MAX_CHARACTERS];
+		_upperIndexes = new byte[MAX_CHARACTERS];
 
-		_charIndexes = new HashMap<Character, Integer>(MAX_CHARACTERS * 2);
 		for (int i = 0; i < MAX_CHARACTERS; i++) {
-			_charIndexes.put(_chars[i], i);
+			_lowerIndexes[i] = (byte) _lower[i];
+			_upperIndexes[i] = (byte) _upper[i];
+
+			final char c = _chars[i];
+			if (c == 0x0 && i != 0) {
+				// unassigned
+				continue;
+			}
+			final int p = c >>> 8;
+			short[] page = _charIndexes[p];
+			if (page == unmappable) {
+				page = _charIndexes[p] = unmappable.clone();
+				_lowerChars[p] = identityPage(p);
+				_upperChars[p] = identityPage(p);
+				_ctypeChars[p] = new byte[MAX_CHARACTERS];
+			}
+			page[c & 0xFF] = (short) i;
+			_lowerChars[p][c & 0xFF] = _chars[_lower[i]];
+			_upperChars[p][c & 0xFF] = _chars[_upper[i]];
+			// ctype has a leading 00, hence +1
+			_ctypeChars[p][c & 0xFF] = _ctypes[i + 1];
 		}
 
-		for (Map.Entry<String, MySqlCollationBean> e : charset.getCollations().entrySet()) {
-			_collations.put(e.getKey(), new MySqlCollation(this, e.getValue()));
+		for (Map.Entry<String, byte[]> e : weights.entrySet()) {
+			_collations.put(e.getKey(), new MySqlCollation(this, e.getKey(), e.getValue()));
 		}
 
 	}
 
+	private static char[] identityPage(final int page) {
+		final char[] chars = new char[MAX_CHARACTERS];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (page << 8 | i);
+		}
+		return chars;
+	}
+
+	private static Map<String, byte[]> toWeights(MySqlCharsetBean charset) {
+		Map<String, byte[]> weights = new HashMap<String, byte[]>();
+		for (Map.Entry<String, MySqlCollationBean> e : charset.getCollations().entrySet()) {
+			weights.put(e.getKey(), MySqlCharsetUtils.toByteArray(e.getValue().getMap()));
+		}
+		return weights;
+	}
+
 	/*
 	 * 0x01 Upper-case word character 0x02 Lower-case word character 0x04
 	 * Decimal digit 0x08 Printer control (Space/TAB/VT/FF/CR) 0x10 Not-white,
@@ -111,6 +214,153 @@ public class MySqlCharset implements Serializable {
 		return toChar(_upper[toIndex(character)]);
 	}
 
+	/**
+	 * MySQL's LOWER() for whole strings, unmappable characters are kept as they
+	 * are
+	 */
+	public String toLowerCase(final CharSequence string) {
+		return convert(_lowerChars, string);
+	}
+
+	/**
+	 * MySQL's UPPER() for whole strings, unmappable characters are kept as they
+	 * are
+	 */
+	public String toUpperCase(final CharSequence string) {
+		return convert(_upperChars, string);
+	}
+
+	/**
+	 * in-place {@link #toLowerCase(CharSequence)} of a range of chars
+	 */
+	public void toLowerCase(final char[] chars, final int offset, final int length) {
+		convert(_lowerChars, chars, offset, length);
+	}
+
+	/**
+	 * in-place {@link #toUpperCase(CharSequence)} of a range of chars
+	 */
+	public void toUpperCase(final char[] chars, final int offset, final int length) {
+		convert(_upperChars, chars, offset, length);
+	}
+
+	/**
+	 * in-place LOWER() of a range of bytes encoded in this charset
+	 */
+	public void toLowerCase(final byte[] bytes, final int offset, final int length) {
+		convert(_lowerIndexes, bytes, offset, length);
+	}
+
+	/**
+	 * in-place UPPER() of a range of bytes encoded in this charset
+	 */
+	public void toUpperCase(final byte[] bytes, final int offset, final int length) {
+		convert(_upperIndexes, bytes, offset, length);
+	}
+
+	/**
+	 * in-place LOWER() of remaining bytes encoded in this charset, position
+	 * isn't changed
+	 */
+	public void toLowerCase(final ByteBuffer buffer) {
+		convert(_lowerIndexes, buffer);
+	}
+
+	/**
+	 * in-place UPPER() of remaining bytes encoded in this charset, position
+	 * isn't changed
+	 */
+	public void toUpperCase(final ByteBuffer buffer) {
+		convert(_upperIndexes, buffer);
+	}
+
+	private static String convert(final char[][] table, final CharSequence string) {
+		final char[] chars = new char[string.length()];
+		for (int i = 0; i < chars.length; i++) {
+			final char c = string.charAt(i);
+			final char[] page = table[c >>> 8];
+			chars[i] = page == null ? c : page[c & 0xFF];
+		}
+		return new String(chars);
+	}
+
+	private static void convert(final char[][] table, final char[] chars, final int offset, final int length) {
+		checkRange(chars.length, offset, length);
+		for (int i = offset; i < offset + length; i++) {
+			final char c = chars[i];
+			final char[] page = table[c >>> 8];
+			if (page != null) {
+				chars[i] = page[c & 0xFF];
+			}
+		}
+	}
+
+	private static void convert(final byte[] table, final byte[] bytes, final int offset, final int length) {
+		checkRange(bytes.length, offset, length);
+		for (int i = offset; i < offset + length; i++) {
+			bytes[i] = table[bytes[i] & 0xFF];
+		}
+	}
+
+	private static void convert(final byte[] table, final ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			convert(table, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		} else {
+			for (int i = buffer.position(); i < buffer.limit(); i++) {
+				buffer.put(i, table[buffer.get(i) & 0xFF]);
+			}
+		}
+	}
+
+	/**
+	 * @return ctype flags shared by all characters of given string (e.g.
+	 *         {@link #CTYPE_DIGIT} if all characters are digits), 0 if string
+	 *         contains unmappable characters, 0xFF for empty strings
+	 */
+	public int classify(final CharSequence string) {
+		int ctype = 0xFF;
+		for (int i = 0; i < string.length() && ctype != 0; i++) {
+			final char c = string.charAt(i);
+			final byte[] page = _ctypeChars[c >>> 8];
+			ctype &= page == null ? 0 : page[c & 0xFF];
+		}
+		return ctype;
+	}
+
+	/**
+	 * @return ctype flags shared by all bytes of given range encoded in this
+	 *         charset, 0xFF for empty ranges
+	 */
+	public int classify(final byte[] bytes, final int offset, final int length) {
+		checkRange(bytes.length, offset, length);
+		int ctype = 0xFF;
+		for (int i = offset; i < offset + length && ctype != 0; i++) {
+			// ctype has a leading 00, hence +1
+			ctype &= _ctypes[(bytes[i] & 0xFF) + 1];
+		}
+		return ctype;
+	}
+
+	/**
+	 * writes ctype flags of each character of given string to ctypes (0 for
+	 * unmappable characters)
+	 */
+	public void classify(final CharSequence string, final byte[] ctypes, final int offset) {
+		checkRange(ctypes.length, offset, string.length());
+		for (int i = 0; i < string.length(); i++) {
+			final char c = string.charAt(i);
+			final byte[] page = _ctypeChars[c >>> 8];
+			ctypes[offset + i] = page == null ? 0 : page[c & 0xFF];
+		}
+	}
+
+	private static void checkRange(final int arrayLength, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset > arrayLength - length) {
+			throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", array length="
+					+ arrayLength);
+		}
+	}
+
 	/**
 	 * @return character index for this charset, always >= 0 and <
 	 *         {@link #MAX_CHARACTERS}
@@ -118,15 +368,23 @@ public class MySqlCharset implements Serializable {
 	 *             for unmappable character
 	 */
 	public int toIndex(final char character) {
-		Integer i = _charIndexes.get(character);
-		if (i == null) {
+		final int i = indexOf(character);
+		if (i == UNMAPPABLE) {
 			throw new UnmappableCharacterException(this, character);
 		}
 		return i;
 	}
 
+	/**
+	 * @return character index for this charset or {@link #UNMAPPABLE} for
+	 *         unmappable character
+	 */
+	int indexOf(final char character) {
+		return _charIndexes[character >>> 8][character & 0xFF];
+	}
+
 	public boolean isMappable(char character) {
-		return _charIndexes.containsKey(character);
+		return indexOf(character) != UNMAPPABLE;
 	}
 
 	public boolean isMappable(String string) {
@@ -148,6 +406,13 @@ public class MySqlCharset implements Serializable {
 		return _chars[toIndex(character)];
 	}
 
+	/**
+	 * @return {@link Charset} using the exact character mapping of this charset
+	 */
+	public Charset asJavaCharset() {
+		return new MySqlJavaCharset(this);
+	}
+
 	public String getName() {
 		return _name;
 	}
@@ -164,9 +429,61 @@ public class MySqlCharset implements Serializable {
 		return _chars;
 	}
 
+	byte[] getCtypes() {
+		return _ctypes;
+	}
+
+	int[] getUpper() {
+		return _upper;
+	}
+
+	int[] getLower() {
+		return _lower;
+	}
+
+	Map<String, MySqlCollation> getCollations() {
+		return _collations;
+	}
+
 	@Override
 	public String toString() {
 		return "MySqlCharset [name=" + _name + ", collations=" + _collations + "]";
 	}
 
+	public final Object writeReplace() throws ObjectStreamException {
+		return new SerializedCharset(this);
+	}
+
+	/**
+	 * serializes raw tables only or just the name of charsets registered with
+	 * {@link MySqlCharsetRegistry}
+	 */
+	private static final class SerializedCharset implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String _name;
+		private final byte[] _tables;
+
+		private SerializedCharset(final MySqlCharset charset) {
+			_name = charset.getName();
+			_tables = MySqlCharsetRegistry.isRegistered(charset) ? null : MySqlCharsetTables.toBytes(Collections
+					.singleton(charset));
+		}
+
+		public final Object readResolve() throws ObjectStreamException {
+			if (_tables == null) {
+				final MySqlCharset charset = MySqlCharsetRegistry.get(_name);
+				if (charset == null) {
+					throw new InvalidObjectException("charset not registered: " + _name);
+				}
+				return charset;
+			}
+			try {
+				return MySqlCharsetTables.read(ByteBuffer.wrap(_tables)).get(_name);
+			} catch (final IOException e) {
+				throw new InvalidObjectException(e.getMessage());
+			}
+		}
+	}
+
 }
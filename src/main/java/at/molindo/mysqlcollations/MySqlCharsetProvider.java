@@ -0,0 +1,89 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.spi.CharsetProvider;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * {@link CharsetProvider} for charsets of the default directory, e.g.
+ * <code>Charset.forName("mysql-latin1")</code>
+ */
+public class MySqlCharsetProvider extends CharsetProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(MySqlCharsetProvider.class);
+
+	@Override
+	public Iterator<Charset> charsets() {
+		return Charsets.CHARSETS.values().iterator();
+	}
+
+	@Override
+	public Charset charsetForName(final String charsetName) {
+		return Charsets.CHARSETS.get(charsetName.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * lazy holder, charset files are parsed on first access
+	 */
+	private static final class Charsets {
+		private static final Map<String, Charset> CHARSETS = load(MySqlCollatorFactory.getDirectory());
+	}
+
+	/**
+	 * @return charsets of given directory mapped by lower case name, empty if
+	 *         directory can't be loaded as failing would break charset lookup
+	 *         of the whole JVM
+	 */
+	static Map<String, Charset> load(final File dir) {
+		if (!dir.isDirectory()) {
+			return Collections.emptyMap();
+		}
+
+		final MySqlCollatorFactory factory;
+		try {
+			factory = MySqlCollatorFactory.parse(dir);
+		} catch (final IOException e) {
+			log.warn("failed to load MySQL charsets from " + dir, e);
+			return Collections.emptyMap();
+		} catch (final SAXException e) {
+			log.warn("failed to load MySQL charsets from " + dir, e);
+			return Collections.emptyMap();
+		} catch (final RuntimeException e) {
+			log.warn("failed to load MySQL charsets from " + dir, e);
+			return Collections.emptyMap();
+		}
+
+		final Map<String, Charset> charsets = new HashMap<String, Charset>();
+		for (final MySqlCharset charset : factory.getCharsets()) {
+			final Charset cs = charset.asJavaCharset();
+			charsets.put(cs.name().toLowerCase(Locale.ENGLISH), cs);
+		}
+		return Collections.unmodifiableMap(charsets);
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * per-JVM registry of charsets serialized by name only
+ */
+public final class MySqlCharsetRegistry {
+
+	private static final ConcurrentMap<String, MySqlCharset> CHARSETS = new ConcurrentHashMap<String, MySqlCharset>();
+
+	private MySqlCharsetRegistry() {
+	}
+
+	/**
+	 * register all charsets of given factory, replacing previously registered
+	 * charsets of same name
+	 */
+	public static void register(final MySqlCollatorFactory factory) {
+		for (final MySqlCharset charset : factory.getCharsets()) {
+			register(charset);
+		}
+	}
+
+	/**
+	 * register given charset, replacing a previously registered charset of
+	 * same name
+	 */
+	public static void register(final MySqlCharset charset) {
+		CHARSETS.put(charset.getName(), charset);
+	}
+
+	/**
+	 * @return true if given charset was removed
+	 */
+	public static boolean unregister(final MySqlCharset charset) {
+		return CHARSETS.remove(charset.getName(), charset);
+	}
+
+	/**
+	 * @return registered charset of given name or null
+	 */
+	public static MySqlCharset get(final String name) {
+		return CHARSETS.get(name);
+	}
+
+	static boolean isRegistered(final MySqlCharset charset) {
+		return CHARSETS.get(charset.getName()) == charset;
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * binary, read-only file format for charset and collation tables
+ */
+final class MySqlCharsetTables {
+
+	/*
+	 * file      := MAGIC VERSION count:int charset*
+	 * charset   := name ctypes:bytes chars:chars upper:bytes lower:bytes count:int collation*
+	 * collation := name weights:bytes (length -1 for binary collations)
+	 * name      := length:short UTF-8
+	 * bytes     := length:int byte*
+	 * chars     := length:int char*
+	 */
+	private static final int MAGIC = 0x4D594354; // MYCT
+	/**
+	 * version 2 fixed the lower case table, which was a copy of the upper case
+	 * table before
+	 */
+	private static final int VERSION = 2;
+
+	private static final String NAME_ENCODING = "UTF-8";
+
+	private MySqlCharsetTables() {
+	}
+
+	public static void write(final Collection<MySqlCharset> charsets, final File file) throws IOException {
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(charsets, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return charset tables as bytes
+	 */
+	public static byte[] toBytes(final Collection<MySqlCharset> charsets) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(charsets.size() * 2048);
+		try {
+			write(charsets, out);
+		} catch (final IOException e) {
+			throw new RuntimeException("writing to memory failed", e);
+		}
+		return out.toByteArray();
+	}
+
+	public static void write(final Collection<MySqlCharset> charsets, final OutputStream stream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(charsets.size());
+		for (final MySqlCharset charset : charsets) {
+			writeName(out, charset.getName());
+			writeBytes(out, charset.getCtypes());
+			writeChars(out, charset.getCharacters());
+			writeBytes(out, toBytes(charset.getUpper()));
+			writeBytes(out, toBytes(charset.getLower()));
+
+			final Map<String, MySqlCollation> collations = charset.getCollations();
+			out.writeInt(collations.size());
+			for (final MySqlCollation collation : collations.values()) {
+				writeName(out, collation.getName());
+				writeBytes(out, collation.getWeights());
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * @return content of given file, only used while reading tables
+	 */
+	public static ByteBuffer readFile(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final byte[] bytes = new byte[(int) raf.length()];
+			raf.readFully(bytes);
+			return ByteBuffer.wrap(bytes);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return charsets mapped by name
+	 * @throws IOException
+	 *             if buffer doesn't contain valid charset tables
+	 */
+	public static Map<String, MySqlCharset> read(final ByteBuffer buffer) throws IOException {
+		final ByteBuffer in = buffer.duplicate();
+		try {
+			if (in.getInt() != MAGIC) {
+				throw new IOException("not a charset table file");
+			}
+			final int version = in.getInt();
+			if (version != VERSION) {
+				throw new IOException("unsupported charset table version: " + version);
+			}
+
+			final int count = in.getInt();
+			final Map<String, MySqlCharset> charsets = new HashMap<String, MySqlCharset>(count * 2);
+			for (int i = 0; i < count; i++) {
+				final String name = readName(in);
+				final byte[] ctypes = readBytes(in);
+				final char[] chars = readChars(in);
+				final int[] upper = toInts(readBytes(in));
+				final int[] lower = toInts(readBytes(in));
+
+				final int collations = in.getInt();
+				final Map<String, byte[]> weights = new HashMap<String, byte[]>(collations * 2);
+				for (int j = 0; j < collations; j++) {
+					weights.put(readName(in), readBytes(in));
+				}
+
+				charsets.put(name, new MySqlCharset(name, ctypes, chars, upper, lower, weights));
+			}
+			return charsets;
+		} catch (final BufferUnderflowException e) {
+			throw new IOException("truncated charset table file");
+		}
+	}
+
+	private static void writeName(final DataOutputStream out, final String name) throws IOException {
+		final byte[] bytes = name.getBytes(NAME_ENCODING);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readName(final ByteBuffer in) throws IOException {
+		final byte[] bytes = new byte[in.getShort()];
+		in.get(bytes);
+		return new String(bytes, NAME_ENCODING);
+	}
+
+	private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static byte[] readBytes(final ByteBuffer in) {
+		final int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		in.get(bytes);
+		return bytes;
+	}
+
+	private static void writeChars(final DataOutputStream out, final char[] chars) throws IOException {
+		out.writeInt(chars.length);
+		for (final char c : chars) {
+			out.writeChar(c);
+		}
+	}
+
+	private static char[] readChars(final ByteBuffer in) {
+		final char[] chars = new char[in.getInt()];
+		in.asCharBuffer().get(chars);
+		in.position(in.position() + chars.length * 2);
+		return chars;
+	}
+
+	/**
+	 * @param indexes
+	 *            character indexes, always &lt; {@link MySqlCharset#MAX_CHARACTERS}
+	 */
+	private static byte[] toBytes(final int[] indexes) {
+		final byte[] bytes = new byte[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			bytes[i] = (byte) indexes[i];
+		}
+		return bytes;
+	}
+
+	private static int[] toInts(final byte[] bytes) {
+		final int[] indexes = new int[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			indexes[i] = bytes[i] & 0xFF;
+		}
+		return indexes;
+	}
+}
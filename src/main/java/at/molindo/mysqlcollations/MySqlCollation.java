@@ -16,6 +16,7 @@
 
 package at.molindo.mysqlcollations;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 import at.molindo.mysqlcollations.xml.MySqlCollationBean;
@@ -31,21 +32,42 @@ public class MySqlCollation implements Serializable {
 
 	private final MySqlCollator _collator;
 
+	/**
+	 * binary collation or weight of each character index equals index
+	 */
+	private final boolean _identity;
+
 	/**
 	 * contains the lowest character mapping for any weight - used for
 	 * normalization of
 	 */
 	private final char[] _normalize;
 
+	/**
+	 * hash of character mapping and weights
+	 */
+	private final long _fingerprint;
+
 	public MySqlCollation(MySqlCharset charset, MySqlCollationBean collation) {
+		this(charset, collation.getName(), MySqlCharsetUtils.toByteArray(collation.getMap()));
+	}
+
+	/**
+	 * @param weights
+	 *            weight for each character index, null for binary collations
+	 *            (using character index as weight)
+	 */
+	MySqlCollation(MySqlCharset charset, String name, byte[] weights) {
 		if (charset == null) {
 			throw new NullPointerException("charset");
 		}
 		_charset = charset;
-		_name = collation.getName();
-		_weights = MySqlCharsetUtils.toByteArray(collation.getMap());
+		_name = name;
+		_weights = weights;
+		_identity = isIdentity(weights);
+		_fingerprint = fingerprint(charset, weights);
 
-		_collator = new MySqlCollator(this);
+		_collator = MySqlCollator.create(this, UnmappableCharacterPolicy.FAIL);
 
 		_normalize = new char[MySqlCharset.MAX_CHARACTERS];
 
@@ -58,12 +80,82 @@ public class MySqlCollation implements Serializable {
 		}
 	}
 
+	private static boolean isIdentity(final byte[] weights) {
+		if (weights == null) {
+			return true;
+		}
+		for (int i = 0; i < weights.length; i++) {
+			if ((weights[i] & 0xFF) != i) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long fingerprint(final MySqlCharset charset, final byte[] weights) {
+		final char[] chars = charset.getCharacters();
+		long hash = 1125899906842597L;
+		for (int i = 0; i < MySqlCharset.MAX_CHARACTERS; i++) {
+			hash = 31 * hash + chars[i];
+			hash = 31 * hash + (weights == null ? i : weights[i] & 0xFF);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return fingerprint of character mapping and weights
+	 */
+	long getFingerprint() {
+		return _fingerprint;
+	}
+
+	/**
+	 * @return true if other collation has same name, charset and tables, e.g.
+	 *         loaded by another factory
+	 */
+	boolean isEquivalent(final MySqlCollation other) {
+		return this == other || _name.equals(other._name) && _charset.getName().equals(other._charset.getName())
+				&& _fingerprint == other._fingerprint;
+	}
+
 	public MySqlCollator getCollator() {
 		return _collator;
 	}
 
+	/**
+	 * @return weight of given character, its character index for binary
+	 *         collations
+	 * @throws UnmappableCharacterException
+	 *             for unmappable character
+	 */
 	public byte getWeight(final char character) {
-		return _weights == null ? (byte) character : _weights[getCharset().toIndex(character)];
+		final int index = getCharset().toIndex(character);
+		return _weights == null ? (byte) index : _weights[index];
+	}
+
+	/**
+	 * @return unsigned weight of given character or -1 if unmappable
+	 */
+	int weight(final char character) {
+		final int index = getCharset().indexOf(character);
+		if (index == MySqlCharset.UNMAPPABLE) {
+			return -1;
+		}
+		return _weights == null ? index : _weights[index] & 0xFF;
+	}
+
+	/**
+	 * @return unsigned weight of character at given index of this charset
+	 */
+	int weightOfIndex(final int index) {
+		return _weights == null ? index : _weights[index] & 0xFF;
+	}
+
+	/**
+	 * @return lowest character of given unsigned weight, 0x0 if there is none
+	 */
+	char getNormalized(final int weight) {
+		return _normalize[weight];
 	}
 
 	public String normalize(final String string) {
@@ -77,17 +169,61 @@ public class MySqlCollation implements Serializable {
 		return buf.toString();
 	}
 
+	/**
+	 * @return true for binary collations, ordering by character index
+	 */
+	public boolean isBinary() {
+		return _weights == null;
+	}
+
+	/**
+	 * @return true for binary collations and collations using the character
+	 *         index as weight, i.e. all characters have distinct weights
+	 *         ordered like the charset
+	 */
+	public boolean isIdentity() {
+		return _identity;
+	}
+
 	public MySqlCharset getCharset() {
 		return _charset;
 	}
 
+	byte[] getWeights() {
+		return _weights;
+	}
+
 	public String getName() {
 		return _name;
 	}
 
 	@Override
 	public String toString() {
-		return "MySqlCollation [name=" + _name + ", charset=" + _charset + "]";
+		return "MySqlCollation [name=" + _name + ", charset=" + _charset.getName() + "]";
+	}
+
+	public final Object writeReplace() throws ObjectStreamException {
+		return new SerializedCollation(_charset, _name);
+	}
+
+	/**
+	 * serializes charset and name only, tables and collator are resolved from
+	 * charset
+	 */
+	private static final class SerializedCollation implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final MySqlCharset _charset;
+		private final String _name;
+
+		private SerializedCollation(final MySqlCharset charset, final String name) {
+			_charset = charset;
+			_name = name;
+		}
+
+		public final Object readResolve() throws ObjectStreamException {
+			return _charset.getCollation(_name);
+		}
 	}
 
 }
@@ -19,6 +19,12 @@
  */
 package at.molindo.mysqlcollations;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.text.CollationKey;
@@ -26,7 +32,25 @@ import java.util.Arrays;
 
 import edu.umd.cs.findbugs.annotations.SuppressWarnings;
 
-public class MySqlCollationKey extends CollationKey {
+/**
+ * {@link CollationKey} holding the weights of its source string. Weights are
+ * compared as unsigned bytes, hence {@link #toByteArray()} is order-preserving
+ * under plain unsigned byte comparison.
+ */
+public class MySqlCollationKey extends CollationKey implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * source of keys created without source string
+	 */
+	@SuppressWarnings(value = "DM_STRING_CTOR", justification = "distinct instance used as marker")
+	private static final String NO_SOURCE = new String();
+
+	/**
+	 * escape byte in delimited form, following an escaped 0x00
+	 */
+	private static final byte ESCAPE = (byte) 0xFF;
 
 	private final byte[] _weights;
 	private final int _hash;
@@ -38,16 +62,78 @@ public class MySqlCollationKey extends CollationKey {
 	}
 
 	public MySqlCollationKey(final String source, final MySqlCollation collation) {
-		super(source);
-		_weights = new byte[source.length()];
+		this(source, weights(source, collation));
+	}
+
+	/**
+	 * key without source string
+	 */
+	MySqlCollationKey(final byte[] weights) {
+		this(NO_SOURCE, weights);
+	}
+
+	MySqlCollationKey(final String source, final byte[] weights) {
+		this(source, weights, hash(weights));
+	}
+
+	private static byte[] weights(final String source, final MySqlCollation collation) {
+		final byte[] weights = new byte[source.length()];
+		for (int i = 0; i < source.length(); i++) {
+			weights[i] = collation.getWeight(source.charAt(i));
+		}
+		return weights;
+	}
+
+	private static int hash(final byte[] weights) {
 		int hash = 1;
 
 		final int prime = 31;
-		for (int i = 0; i < source.length(); i++) {
-			_weights[i] = collation.getWeight(source.charAt(i));
-			hash = prime * hash + _weights[i];
+		for (int i = 0; i < weights.length; i++) {
+			hash = prime * hash + weights[i];
 		}
-		_hash = hash;
+		return hash;
+	}
+
+	/**
+	 * @return key created from weights returned by {@link #toByteArray()}
+	 *         without source string
+	 */
+	public static MySqlCollationKey fromByteArray(final byte[] weights) {
+		return new MySqlCollationKey(NO_SOURCE, weights.clone());
+	}
+
+	/**
+	 * @return key created from bytes returned by
+	 *         {@link #toDelimitedByteArray()} without source string
+	 * @throws IllegalArgumentException
+	 *             if bytes aren't a valid delimited key
+	 */
+	public static MySqlCollationKey fromDelimitedByteArray(final byte[] bytes) {
+		final byte[] weights = new byte[bytes.length];
+		int length = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != 0x00) {
+				weights[length++] = bytes[i];
+			} else if (i + 1 < bytes.length && bytes[i + 1] == ESCAPE) {
+				weights[length++] = 0x00;
+				i++;
+			} else if (i + 2 == bytes.length && bytes[i + 1] == 0x00) {
+				return new MySqlCollationKey(NO_SOURCE, Arrays.copyOf(weights, length));
+			} else {
+				break;
+			}
+		}
+		throw new IllegalArgumentException("not a delimited key");
+	}
+
+	/**
+	 * @return key read from stream written by {@link #writeTo(DataOutput)}
+	 *         without source string
+	 */
+	public static MySqlCollationKey readFrom(final DataInput in) throws IOException {
+		final byte[] weights = new byte[readLength(in)];
+		in.readFully(weights);
+		return new MySqlCollationKey(NO_SOURCE, weights);
 	}
 
 	@Override
@@ -65,7 +151,7 @@ public class MySqlCollationKey extends CollationKey {
 			return false;
 		}
 		final MySqlCollationKey other = (MySqlCollationKey) obj;
-		if (other.getSourceString() == getSourceString()) {
+		if (other.getSourceString() == getSourceString() && hasSourceString()) {
 			return true;
 		}
 		final byte[] oWeights = other._weights;
@@ -96,42 +182,197 @@ public class MySqlCollationKey extends CollationKey {
 			final byte b = oWeights[i];
 
 			if (a != b) {
-				return a - b;
+				// unsigned as MySQL does
+				return (a & 0xFF) - (b & 0xFF);
 			}
 		}
 		// shorter is first
 		return _weights.length - oWeights.length;
 	}
 
+	/**
+	 * @return weights, order-preserving under unsigned byte comparison
+	 */
 	@Override
 	public byte[] toByteArray() {
 		return Arrays.copyOf(_weights, _weights.length);
 	}
 
+	/**
+	 * @return up to maxLength leading weights, order-preserving under unsigned
+	 *         byte comparison except that keys sharing the first maxLength
+	 *         weights compare equal
+	 */
+	public byte[] toByteArray(final int maxLength) {
+		return Arrays.copyOf(_weights, Math.min(maxLength, _weights.length));
+	}
+
+	/**
+	 * 0x00 weights are escaped as 0x00 0xFF and the key is terminated by 0x00
+	 * 0x00. Hence delimited keys may be concatenated or embedded in other keys
+	 * while still being order-preserving under unsigned byte comparison.
+	 * 
+	 * @return self-delimiting weights
+	 */
+	public byte[] toDelimitedByteArray() {
+		final byte[] bytes = new byte[delimitedLength(_weights, _weights.length)];
+		writeDelimited(_weights, _weights.length, bytes, 0);
+		return bytes;
+	}
+
+	/**
+	 * @return length of delimited form of given weights
+	 */
+	static int delimitedLength(final byte[] weights, final int length) {
+		int delimited = length + 2;
+		for (int i = 0; i < length; i++) {
+			if (weights[i] == 0x00) {
+				delimited++;
+			}
+		}
+		return delimited;
+	}
+
+	/**
+	 * write delimited form of given weights to bytes
+	 * 
+	 * @return offset after written bytes
+	 */
+	static int writeDelimited(final byte[] weights, final int length, final byte[] bytes, int offset) {
+		for (int i = 0; i < length; i++) {
+			bytes[offset++] = weights[i];
+			if (weights[i] == 0x00) {
+				bytes[offset++] = ESCAPE;
+			}
+		}
+		bytes[offset++] = 0x00;
+		bytes[offset++] = 0x00;
+		return offset;
+	}
+
+	/**
+	 * write weights prefixed by their length, but not the source string
+	 * 
+	 * @see #readFrom(DataInput)
+	 */
+	public void writeTo(final DataOutput out) throws IOException {
+		writeLength(out, _weights.length);
+		out.write(_weights);
+	}
+
+	/**
+	 * write length as unsigned variable length int, 7 bits per byte
+	 */
+	private static void writeLength(final DataOutput out, int length) throws IOException {
+		while ((length & ~0x7F) != 0) {
+			out.writeByte((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+		out.writeByte(length);
+	}
+
+	private static int readLength(final DataInput in) throws IOException {
+		int length = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readUnsignedByte();
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return length;
+			}
+		}
+		throw new IOException("malformed length");
+	}
+
+	/**
+	 * @return false if this key was created without source string, e.g. by
+	 *         {@link #readFrom(DataInput)}. {@link #getSourceString()} returns
+	 *         an empty string in that case
+	 */
+	@SuppressWarnings(value = "ES_COMPARING_STRINGS_WITH_EQ", justification = "identity of marker instance")
+	public boolean hasSourceString() {
+		return getSourceString() != NO_SOURCE;
+	}
+
+	/**
+	 * @return equal key without source string, that won't be serialized
+	 */
+	public MySqlCollationKey withoutSourceString() {
+		return hasSourceString() ? new MySqlCollationKey(NO_SOURCE, _weights, _hash) : this;
+	}
+
 	@Override
 	public String toString() {
 		return "MySqlCollationKey [source=" + getSourceString() + "]";
 	}
 
 	public final Object writeReplace() throws ObjectStreamException {
-		return new SerializedKey(getSourceString(), _weights, _hash);
+		return new SerializedKey(this);
 	}
 
-	private static final class SerializedKey implements Serializable {
+	/**
+	 * serializes length-prefixed weights and the source string if available
+	 */
+	private static final class SerializedKey implements Externalizable {
 		private static final long serialVersionUID = 1L;
 
-		private final String _source;
-		private final byte[] _weights;
-		private final int _hash;
+		private static final byte NONE = 0;
+		private static final byte UTF = 1;
+		private static final byte CHARS = 2;
+
+		/**
+		 * max length of strings always fitting into modified UTF-8 of
+		 * {@link DataOutput#writeUTF(String)}
+		 */
+		private static final int MAX_UTF = 0xFFFF / 3;
 
-		public SerializedKey(final String source, final byte[] weights, final int hash) {
-			_source = source;
-			_weights = weights;
-			_hash = hash;
+		private MySqlCollationKey _key;
+
+		/**
+		 * required by {@link Externalizable}
+		 */
+		public SerializedKey() {
+		}
+
+		private SerializedKey(final MySqlCollationKey key) {
+			_key = key;
+		}
+
+		@Override
+		public void writeExternal(final ObjectOutput out) throws IOException {
+			_key.writeTo(out);
+			if (!_key.hasSourceString()) {
+				out.writeByte(NONE);
+			} else if (_key.getSourceString().length() <= MAX_UTF) {
+				out.writeByte(UTF);
+				out.writeUTF(_key.getSourceString());
+			} else {
+				out.writeByte(CHARS);
+				writeLength(out, _key.getSourceString().length());
+				out.writeChars(_key.getSourceString());
+			}
+		}
+
+		@Override
+		public void readExternal(final ObjectInput in) throws IOException {
+			final MySqlCollationKey key = readFrom(in);
+			final byte source = in.readByte();
+			if (source == NONE) {
+				_key = key;
+			} else if (source == UTF) {
+				_key = new MySqlCollationKey(in.readUTF(), key._weights, key._hash);
+			} else if (source == CHARS) {
+				final char[] chars = new char[readLength(in)];
+				for (int i = 0; i < chars.length; i++) {
+					chars[i] = in.readChar();
+				}
+				_key = new MySqlCollationKey(new String(chars), key._weights, key._hash);
+			} else {
+				throw new IOException("unknown source type: " + source);
+			}
 		}
 
 		public final Object readResolve() throws ObjectStreamException {
-			return new MySqlCollationKey(_source, _weights, _hash);
+			return _key;
 		}
 	}
 }
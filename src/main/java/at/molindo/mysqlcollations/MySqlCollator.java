@@ -19,8 +19,13 @@
  */
 package at.molindo.mysqlcollations;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
 
 import edu.umd.cs.findbugs.annotations.SuppressWarnings;
 
@@ -31,13 +36,86 @@ import edu.umd.cs.findbugs.annotations.SuppressWarnings;
  */
 public class MySqlCollator implements Comparator<String>, Serializable, Cloneable {
 	private static final long serialVersionUID = 1L;
+
+	/**
+	 * weight of unmappable characters for {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	private static final int FAIL = -1;
+
+	/**
+	 * weight of unmappable characters for {@link UnmappableCharacterPolicy#SKIP}
+	 */
+	private static final int SKIP = -2;
+
 	private final MySqlCollation _collation;
+	private final UnmappableCharacterPolicy _policy;
+
+	/**
+	 * unsigned weight for each character index followed by the weight of
+	 * unmappable characters at {@link MySqlCharset#UNMAPPABLE} (negative for
+	 * {@link #FAIL} and {@link #SKIP})
+	 */
+	private final int[] _weights;
 
 	public MySqlCollator(final MySqlCollation collation) {
+		this(collation, UnmappableCharacterPolicy.FAIL);
+	}
+
+	/**
+	 * @param policy
+	 *            how to treat unmappable characters
+	 */
+	public MySqlCollator(final MySqlCollation collation, final UnmappableCharacterPolicy policy) {
 		if (collation == null) {
 			throw new NullPointerException("collation");
 		}
+		if (policy == null) {
+			throw new NullPointerException("policy");
+		}
 		_collation = collation;
+		_policy = policy;
+
+		final byte[] weights = collation.getWeights();
+		_weights = new int[MySqlCharset.UNMAPPABLE + 1];
+		for (int i = 0; i < MySqlCharset.UNMAPPABLE; i++) {
+			// binary collations use character index as weight
+			_weights[i] = weights == null ? i : weights[i] & 0xFF;
+		}
+		_weights[MySqlCharset.UNMAPPABLE] = toWeight(collation, policy);
+	}
+
+	/**
+	 * @return new collator for given collation, specialized for
+	 *         {@link MySqlCollation#isIdentity() identity} collations
+	 */
+	static MySqlCollator create(final MySqlCollation collation, final UnmappableCharacterPolicy policy) {
+		return collation.isIdentity() ? new IdentityMySqlCollator(collation, policy) : new MySqlCollator(collation,
+				policy);
+	}
+
+	private static int toWeight(final MySqlCollation collation, final UnmappableCharacterPolicy policy) {
+		switch (policy) {
+		case FAIL:
+			return FAIL;
+		case REPLACE:
+			return collation.getWeight('?') & 0xFF;
+		case MIN:
+			return 0x00;
+		case MAX:
+			return 0xFF;
+		case SKIP:
+			return SKIP;
+		default:
+			throw new IllegalArgumentException("unknown policy: " + policy);
+		}
+	}
+
+	/**
+	 * @return collator for same collation using given policy for unmappable
+	 *         characters
+	 */
+	public MySqlCollator withUnmappablePolicy(final UnmappableCharacterPolicy policy) {
+		return policy == _policy ? this : create(_collation, policy);
 	}
 
 	@SuppressWarnings(value = "ES_COMPARING_PARAMETER_STRING_WITH_EQ", justification = "performance optimization only")
@@ -46,17 +124,246 @@ public class MySqlCollator implements Comparator<String>, Serializable, Cloneabl
 		if (source == target) {
 			return 0;
 		}
+		// identical characters have identical weights
+		final int prefix = commonPrefix(source, target);
+		if (prefix == source.length() && prefix == target.length()) {
+			return 0;
+		}
+		final int[] weights = _weights;
+		final MySqlCharset charset = _collation.getCharset();
+
+		int i = prefix, j = prefix;
+		while (i < source.length() && j < target.length()) {
+			final int sWeight = weights[charset.indexOf(source.charAt(i))];
+			final int tWeight = weights[charset.indexOf(target.charAt(j))];
+			if (sWeight != tWeight || sWeight < 0) {
+				if (sWeight == SKIP) {
+					i++;
+					continue;
+				}
+				if (tWeight == SKIP) {
+					j++;
+					continue;
+				}
+				if (sWeight == FAIL) {
+					throw new UnmappableCharacterException(charset, source.charAt(i));
+				}
+				if (tWeight == FAIL) {
+					throw new UnmappableCharacterException(charset, target.charAt(j));
+				}
+				return sWeight - tWeight;
+			}
+			i++;
+			j++;
+		}
+		// shorter is first
+		return remaining(source, i) - remaining(target, j);
+	}
+
+	/**
+	 * @return length of common prefix of raw characters, stopping at
+	 *         unmappable characters for {@link UnmappableCharacterPolicy#FAIL}
+	 *         to fail consistently with {@link #hash(CharSequence)}
+	 */
+	private int commonPrefix(final String source, final String target) {
+		final int length = Math.min(source.length(), target.length());
+		int i = 0;
+		if (_policy == UnmappableCharacterPolicy.FAIL) {
+			final MySqlCharset charset = _collation.getCharset();
+			char c;
+			while (i < length && (c = source.charAt(i)) == target.charAt(i)
+					&& charset.indexOf(c) != MySqlCharset.UNMAPPABLE) {
+				i++;
+			}
+		} else {
+			while (i < length && source.charAt(i) == target.charAt(i)) {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * compare any {@link CharSequence}, e.g. {@link StringBuilder} or
+	 * {@link java.nio.CharBuffer}, without creating strings
+	 */
+	public int compare(final CharSequence source, final CharSequence target) {
+		if (source instanceof String && target instanceof String) {
+			return compare((String) source, (String) target);
+		}
+		if (source == target) {
+			return 0;
+		}
+		// identical characters have identical weights
+		final int prefix = commonPrefix(source, target);
+		if (prefix == source.length() && prefix == target.length()) {
+			return 0;
+		}
+		final int[] weights = _weights;
+		final MySqlCharset charset = _collation.getCharset();
+
+		int i = prefix, j = prefix;
+		while (i < source.length() && j < target.length()) {
+			final int sWeight = weights[charset.indexOf(source.charAt(i))];
+			final int tWeight = weights[charset.indexOf(target.charAt(j))];
+			if (sWeight != tWeight || sWeight < 0) {
+				if (sWeight == SKIP) {
+					i++;
+					continue;
+				}
+				if (tWeight == SKIP) {
+					j++;
+					continue;
+				}
+				if (sWeight == FAIL) {
+					throw new UnmappableCharacterException(charset, source.charAt(i));
+				}
+				if (tWeight == FAIL) {
+					throw new UnmappableCharacterException(charset, target.charAt(j));
+				}
+				return sWeight - tWeight;
+			}
+			i++;
+			j++;
+		}
+		// shorter is first
+		return remaining(source, i) - remaining(target, j);
+	}
+
+	/**
+	 * @return length of common prefix of raw characters, stopping at
+	 *         unmappable characters for {@link UnmappableCharacterPolicy#FAIL}
+	 *         to fail consistently with {@link #hash(CharSequence)}
+	 */
+	private int commonPrefix(final CharSequence source, final CharSequence target) {
+		final int length = Math.min(source.length(), target.length());
 		int i = 0;
-		while (i < source.length() && i < target.length()) {
-			final byte sWeight = _collation.getWeight(source.charAt(i));
-			final byte tWeight = _collation.getWeight(target.charAt(i));
-			if (sWeight != tWeight) {
+		if (_policy == UnmappableCharacterPolicy.FAIL) {
+			final MySqlCharset charset = _collation.getCharset();
+			char c;
+			while (i < length && (c = source.charAt(i)) == target.charAt(i)
+					&& charset.indexOf(c) != MySqlCharset.UNMAPPABLE) {
+				i++;
+			}
+		} else {
+			while (i < length && source.charAt(i) == target.charAt(i)) {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * compare ranges of char arrays without creating strings
+	 */
+	public int compare(final char[] source, final int sOffset, final int sLength, final char[] target,
+			final int tOffset, final int tLength) {
+		checkRange(source, sOffset, sLength);
+		checkRange(target, tOffset, tLength);
+
+		// identical characters have identical weights
+		final int length = Math.min(sLength, tLength);
+		int prefix = 0;
+		if (_policy == UnmappableCharacterPolicy.FAIL) {
+			final MySqlCharset charset = _collation.getCharset();
+			char c;
+			while (prefix < length && (c = source[sOffset + prefix]) == target[tOffset + prefix]
+					&& charset.indexOf(c) != MySqlCharset.UNMAPPABLE) {
+				prefix++;
+			}
+		} else {
+			while (prefix < length && source[sOffset + prefix] == target[tOffset + prefix]) {
+				prefix++;
+			}
+		}
+		if (prefix == sLength && prefix == tLength) {
+			return 0;
+		}
+
+		final int[] weights = _weights;
+		final MySqlCharset charset = _collation.getCharset();
+		final int sEnd = sOffset + sLength, tEnd = tOffset + tLength;
+
+		int i = sOffset + prefix, j = tOffset + prefix;
+		while (i < sEnd && j < tEnd) {
+			final int sWeight = weights[charset.indexOf(source[i])];
+			final int tWeight = weights[charset.indexOf(target[j])];
+			if (sWeight != tWeight || sWeight < 0) {
+				if (sWeight == SKIP) {
+					i++;
+					continue;
+				}
+				if (tWeight == SKIP) {
+					j++;
+					continue;
+				}
+				if (sWeight == FAIL) {
+					throw new UnmappableCharacterException(charset, source[i]);
+				}
+				if (tWeight == FAIL) {
+					throw new UnmappableCharacterException(charset, target[j]);
+				}
 				return sWeight - tWeight;
 			}
 			i++;
+			j++;
 		}
 		// shorter is first
-		return source.length() - target.length();
+		return remaining(source, i, sEnd) - remaining(target, j, tEnd);
+	}
+
+	private static void checkRange(final char[] chars, final int offset, final int length) {
+		if (offset < 0 || length < 0 || offset > chars.length - length) {
+			throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", array length="
+					+ chars.length);
+		}
+	}
+
+	/**
+	 * @return comparator for any {@link CharSequence} using this collator
+	 */
+	public Comparator<CharSequence> charSequenceComparator() {
+		return new Comparator<CharSequence>() {
+
+			@Override
+			public int compare(final CharSequence source, final CharSequence target) {
+				return MySqlCollator.this.compare(source, target);
+			}
+		};
+	}
+
+	/**
+	 * @return number of remaining characters, ignoring skipped unmappable
+	 *         characters
+	 */
+	private int remaining(final char[] chars, int i, final int end) {
+		int remaining = end - i;
+		if (_policy == UnmappableCharacterPolicy.SKIP) {
+			final MySqlCharset charset = _collation.getCharset();
+			for (; i < end; i++) {
+				if (charset.indexOf(chars[i]) == MySqlCharset.UNMAPPABLE) {
+					remaining--;
+				}
+			}
+		}
+		return remaining;
+	}
+
+	/**
+	 * @return number of remaining characters, ignoring skipped unmappable
+	 *         characters
+	 */
+	private int remaining(final CharSequence string, int i) {
+		int remaining = string.length() - i;
+		if (_policy == UnmappableCharacterPolicy.SKIP) {
+			final MySqlCharset charset = _collation.getCharset();
+			for (; i < string.length(); i++) {
+				if (charset.indexOf(string.charAt(i)) == MySqlCharset.UNMAPPABLE) {
+					remaining--;
+				}
+			}
+		}
+		return remaining;
 	}
 
 	@SuppressWarnings(value = "ES_COMPARING_PARAMETER_STRING_WITH_EQ", justification = "performance optimization only")
@@ -64,34 +371,344 @@ public class MySqlCollator implements Comparator<String>, Serializable, Cloneabl
 		if (source == target) {
 			return true;
 		}
-		if (source.length() != target.length()) {
+		if (source.length() != target.length() && _policy != UnmappableCharacterPolicy.SKIP) {
 			return false;
 		}
+		return compare(source, target) == 0;
+	}
 
-		int i = 0;
-		while (i < source.length() && i < target.length()) {
-			final byte sWeight = _collation.getWeight(source.charAt(i));
-			final byte tWeight = _collation.getWeight(target.charAt(i));
-			if (sWeight != tWeight) {
-				return false;
+	public boolean equals(final CharSequence source, final CharSequence target) {
+		if (source instanceof String && target instanceof String) {
+			return equals((String) source, (String) target);
+		}
+		if (source == target) {
+			return true;
+		}
+		if (source.length() != target.length() && _policy != UnmappableCharacterPolicy.SKIP) {
+			return false;
+		}
+		return compare(source, target) == 0;
+	}
+
+	public boolean equals(final char[] source, final int sOffset, final int sLength, final char[] target,
+			final int tOffset, final int tLength) {
+		if (sLength != tLength && _policy != UnmappableCharacterPolicy.SKIP) {
+			checkRange(source, sOffset, sLength);
+			checkRange(target, tOffset, tLength);
+			return false;
+		}
+		return compare(source, sOffset, sLength, target, tOffset, tLength) == 0;
+	}
+
+	/**
+	 * @return weight of given character according to unmappable policy,
+	 *         {@link #SKIP} for skipped characters
+	 * @throws UnmappableCharacterException
+	 *             for unmappable characters using
+	 *             {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	int weightOf(final char character) {
+		final int weight = _weights[_collation.getCharset().indexOf(character)];
+		if (weight == FAIL) {
+			throw new UnmappableCharacterException(_collation.getCharset(), character);
+		}
+		return weight;
+	}
+
+	/**
+	 * @return given string without characters skipped by
+	 *         {@link UnmappableCharacterPolicy#SKIP}, string itself if nothing
+	 *         is skipped
+	 */
+	CharSequence skipUnmappable(final CharSequence string) {
+		if (_policy != UnmappableCharacterPolicy.SKIP) {
+			return string;
+		}
+		final MySqlCharset charset = _collation.getCharset();
+		StringBuilder buf = null;
+		for (int i = 0; i < string.length(); i++) {
+			final char c = string.charAt(i);
+			if (charset.indexOf(c) == MySqlCharset.UNMAPPABLE) {
+				if (buf == null) {
+					buf = new StringBuilder(string.length()).append(string, 0, i);
+				}
+			} else if (buf != null) {
+				buf.append(c);
+			}
+		}
+		return buf == null ? string : buf;
+	}
+
+	/**
+	 * @return hash code of weights of given string, consistent with
+	 *         {@link #equals(String, String)} and equal to
+	 *         {@link MySqlCollationKey#hashCode()} of its collation key
+	 */
+	public int hash(final CharSequence string) {
+		int hash = 1;
+		for (int i = 0; i < string.length(); i++) {
+			final int weight = weightOf(string.charAt(i));
+			if (weight != SKIP) {
+				hash = 31 * hash + (byte) weight;
 			}
-			i++;
 		}
-		return true;
+		return hash;
+	}
+
+	/**
+	 * @return 64 bit hash of weights of given string, consistent with
+	 *         {@link #equals(CharSequence, CharSequence)}, for probabilistic
+	 *         structures like {@link MySqlBloomFilter}
+	 */
+	long longHash(final CharSequence string) {
+		long hash = 0x9E3779B97F4A7C15L;
+		long block = 0;
+		int length = 0;
+		for (int i = 0; i < string.length(); i++) {
+			final int weight = weightOf(string.charAt(i));
+			if (weight != SKIP) {
+				block = block << Byte.SIZE | weight;
+				if ((++length & 7) == 0) {
+					hash = Long.rotateLeft((hash ^ block) * 0xC2B2AE3D27D4EB4FL, 31);
+					block = 0;
+				}
+			}
+		}
+		// length distinguishes trailing 0x00 weights
+		hash = Long.rotateLeft((hash ^ block) * 0xC2B2AE3D27D4EB4FL, 31) ^ length;
+
+		// finalizer of MurmurHash3
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * abbreviated keys contain the first 8 weights of a string (padded with
+	 * 0x00). If the unsigned comparison of abbreviated keys isn't 0, it's
+	 * consistent with {@link #compare(String, String)}. Equal abbreviated keys
+	 * require a full comparison.
+	 * 
+	 * @return first 8 weights packed into a long, to be compared unsigned
+	 */
+	public long abbreviatedKey(final CharSequence string) {
+		long key = 0;
+		int shift = Long.SIZE;
+		for (int i = 0; i < string.length() && shift > 0; i++) {
+			final int weight = weightOf(string.charAt(i));
+			if (weight != SKIP) {
+				shift -= Byte.SIZE;
+				key |= (long) weight << shift;
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * stable sort of strings, comparing abbreviated keys first and falling
+	 * back to a full comparison for equal abbreviated keys only
+	 * 
+	 * @see #abbreviatedKey(CharSequence)
+	 */
+	public void sort(final String[] strings) {
+		sort(strings, 0, strings.length);
+	}
+
+	/**
+	 * stable sort of range of strings, from inclusive, to exclusive
+	 * 
+	 * @see #sort(String[])
+	 */
+	public void sort(final String[] strings, final int from, final int to) {
+		AbbreviatedKeySort.sort(this, strings, from, to);
+	}
+
+	/**
+	 * stable sort of list of strings
+	 * 
+	 * @see #sort(String[])
+	 */
+	public void sort(final List<String> strings) {
+		final String[] array = strings.toArray(new String[strings.size()]);
+		sort(array);
+		final ListIterator<String> iter = strings.listIterator();
+		for (final String string : array) {
+			iter.next();
+			iter.set(string);
+		}
 	}
 
 	/**
 	 * @return new {@link MySqlCollationKey} for given source
 	 */
 	public MySqlCollationKey getCollationKey(final String source) {
-		return new MySqlCollationKey(source, _collation);
+		if (_policy == UnmappableCharacterPolicy.FAIL) {
+			return new MySqlCollationKey(source, _collation);
+		}
+
+		final MySqlCharset charset = _collation.getCharset();
+		final byte[] weights = new byte[source.length()];
+		int length = 0;
+		for (int i = 0; i < source.length(); i++) {
+			final int weight = _weights[charset.indexOf(source.charAt(i))];
+			if (weight != SKIP) {
+				weights[length++] = (byte) weight;
+			}
+		}
+		return new MySqlCollationKey(source, length == weights.length ? weights : Arrays.copyOf(weights, length));
+	}
+
+	/**
+	 * @return new {@link MySqlCollationKey} for given source, without source
+	 *         string unless source is a {@link String}
+	 */
+	public MySqlCollationKey getCollationKey(final CharSequence source) {
+		if (source instanceof String) {
+			return getCollationKey((String) source);
+		}
+		final byte[] weights = new byte[source.length()];
+		final int length = weights(source, weights);
+		return new MySqlCollationKey(length == weights.length ? weights : Arrays.copyOf(weights, length));
+	}
+
+	/**
+	 * write weights of given source to weights, at least as long as source
+	 * 
+	 * @return number of weights written
+	 */
+	int weights(final CharSequence source, final byte[] weights) {
+		int length = 0;
+		for (int i = 0; i < source.length(); i++) {
+			final int weight = weightOf(source.charAt(i));
+			if (weight != SKIP) {
+				weights[length++] = (byte) weight;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return unsigned weight of space character, used for PAD SPACE
+	 */
+	int spaceWeight() {
+		return weightOf(' ');
+	}
+
+	/**
+	 * @return new {@link MySqlCollationKey} for given range of chars, without
+	 *         source string
+	 */
+	public MySqlCollationKey getCollationKey(final char[] source, final int offset, final int length) {
+		checkRange(source, offset, length);
+		return getCollationKey(CharBuffer.wrap(source, offset, length));
+	}
+
+	/**
+	 * @return reusable {@link MySqlLikeMatcher} for given LIKE pattern using
+	 *         '\\' as escape character
+	 * @throws UnmappableCharacterException
+	 *             if pattern contains characters unmappable by this charset
+	 *             using {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	public MySqlLikeMatcher compileLike(final String pattern) {
+		return compileLike(pattern, '\\');
+	}
+
+	/**
+	 * @return reusable {@link MySqlLikeMatcher} for given LIKE pattern
+	 * @throws UnmappableCharacterException
+	 *             if pattern contains characters unmappable by this charset
+	 *             using {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	public MySqlLikeMatcher compileLike(final String pattern, final char escape) {
+		return new MySqlLikeMatcher(this, pattern, escape);
+	}
+
+	/**
+	 * @return reusable {@link MySqlStringSearcher} for given needle
+	 * @throws UnmappableCharacterException
+	 *             if needle contains characters unmappable by this charset
+	 *             using {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	public MySqlStringSearcher compileSearch(final String needle) {
+		return new MySqlStringSearcher(this, needle);
+	}
+
+	/**
+	 * @return reusable {@link MySqlEditDistance} for given pattern
+	 * @throws UnmappableCharacterException
+	 *             if pattern contains characters unmappable by this charset
+	 *             using {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	public MySqlEditDistance compileEditDistance(final String pattern) {
+		return new MySqlEditDistance(this, pattern);
 	}
 
 	/**
 	 * use lowest character of same weight for each character
 	 */
 	public String normalize(final String string) {
-		return _collation.normalize(string);
+		if (string == null || _policy == UnmappableCharacterPolicy.FAIL) {
+			return _collation.normalize(string);
+		}
+
+		final MySqlCharset charset = _collation.getCharset();
+		final StringBuilder buf = new StringBuilder(string.length());
+		for (int i = 0; i < string.length(); i++) {
+			final char c = string.charAt(i);
+			final int index = charset.indexOf(c);
+			if (index != MySqlCharset.UNMAPPABLE) {
+				buf.append(_collation.getNormalized(_weights[index]));
+			} else if (_policy != UnmappableCharacterPolicy.SKIP) {
+				final char n = _collation.getNormalized(_weights[index]);
+				buf.append(n == 0x0 ? c : n);
+			}
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * use lowest character of same weight for each character
+	 */
+	public String normalize(final CharSequence string) {
+		if (string == null || string instanceof String) {
+			return normalize((String) string);
+		}
+
+		final MySqlCharset charset = _collation.getCharset();
+		final StringBuilder buf = new StringBuilder(string.length());
+		for (int i = 0; i < string.length(); i++) {
+			final char c = string.charAt(i);
+			final int index = charset.indexOf(c);
+			final int weight = _weights[index];
+			if (index != MySqlCharset.UNMAPPABLE) {
+				buf.append(_collation.getNormalized(weight));
+			} else if (weight == FAIL) {
+				throw new UnmappableCharacterException(charset, c);
+			} else if (weight != SKIP) {
+				final char n = _collation.getNormalized(weight);
+				buf.append(n == 0x0 ? c : n);
+			}
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * use lowest character of same weight for each character of given range
+	 */
+	public String normalize(final char[] string, final int offset, final int length) {
+		checkRange(string, offset, length);
+		return normalize(CharBuffer.wrap(string, offset, length));
+	}
+
+	/**
+	 * @return new collator reporting to given metrics listener
+	 */
+	public InstrumentedMySqlCollator instrument(final MySqlCollatorMetrics metrics) {
+		return new InstrumentedMySqlCollator(this, metrics);
 	}
 
 	@Override
@@ -107,13 +724,40 @@ public class MySqlCollator implements Comparator<String>, Serializable, Cloneabl
 		return _collation;
 	}
 
+	public UnmappableCharacterPolicy getUnmappablePolicy() {
+		return _policy;
+	}
+
 	public MySqlCharset getCharset() {
 		return _collation.getCharset();
 	}
 
 	@Override
 	public String toString() {
-		return "MySqlCollator [collation=" + _collation + "]";
+		return "MySqlCollator [collation=" + _collation + ", policy=" + _policy + "]";
+	}
+
+	public Object writeReplace() throws ObjectStreamException {
+		return new SerializedCollator(_collation, _policy);
+	}
+
+	/**
+	 * serializes collation and policy only
+	 */
+	private static final class SerializedCollator implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final MySqlCollation _collation;
+		private final UnmappableCharacterPolicy _policy;
+
+		private SerializedCollator(final MySqlCollation collation, final UnmappableCharacterPolicy policy) {
+			_collation = collation;
+			_policy = policy;
+		}
+
+		public final Object readResolve() throws ObjectStreamException {
+			return _collation.getCollator().withUnmappablePolicy(_policy);
+		}
 	}
 
 }
@@ -21,10 +21,15 @@ import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -188,26 +193,111 @@ public class MySqlCollatorFactory implements Serializable {
 	}
 
 	public static MySqlCollatorFactory parse(final File file) throws IOException, SAXException {
+		return parse(file, null);
+	}
+
+	/**
+	 * @param metrics
+	 *            optional listener for parse duration of each file
+	 */
+	public static MySqlCollatorFactory parse(final File file, final MySqlCollatorMetrics metrics) throws IOException,
+			SAXException {
 		if (file.isDirectory()) {
-			return new MySqlCollatorFactory(parseDirectory(file));
+			return new MySqlCollatorFactory(parseDirectory(file, metrics));
 		} else {
-			return new MySqlCollatorFactory(parse(new FileInputStream(file)));
+			return new MySqlCollatorFactory(parse(file.getPath(), new FileInputStream(file), metrics));
 		}
 	}
 
 	public static MySqlCollatorFactory parse(final URL url) throws IOException, SAXException {
-		return new MySqlCollatorFactory(parse(url.openStream()));
+		return parse(url, null);
+	}
+
+	/**
+	 * @param metrics
+	 *            optional listener for parse duration
+	 */
+	public static MySqlCollatorFactory parse(final URL url, final MySqlCollatorMetrics metrics) throws IOException,
+			SAXException {
+		return new MySqlCollatorFactory(parse(url.toString(), url.openStream(), metrics));
+	}
+
+	/**
+	 * load charsets from a compact binary table file written by
+	 * {@link #writeTables(File)}, i.e. fast loading without any XML parsing.
+	 * Tables are read to the heap, the file isn't used afterwards.
+	 * 
+	 * @throws IOException
+	 *             if file isn't a valid table file
+	 */
+	public static MySqlCollatorFactory readTables(final File file) throws IOException {
+		return read(MySqlCharsetTables.readFile(file));
+	}
+
+	/**
+	 * load charsets from a buffer containing a binary table file written by
+	 * {@link #writeTables(File)}
+	 * 
+	 * @throws IOException
+	 *             if buffer doesn't contain valid charset tables
+	 */
+	public static MySqlCollatorFactory read(final ByteBuffer buffer) throws IOException {
+		return new MySqlCollatorFactory(MySqlCharsetTables.read(buffer));
+	}
+
+	private static MySqlCharsetsBean parse(final String source, final InputStream in,
+			final MySqlCollatorMetrics metrics) throws IOException, SAXException {
+		final long start = System.nanoTime();
+		final MySqlCharsetsBean charsets = parse(new InputSource(in));
+		if (metrics != null) {
+			metrics.parsed(source, System.nanoTime() - start);
+		}
+		return charsets;
+	}
+
+	/**
+	 * @return charsets parsed from given file mapped by name
+	 */
+	static Map<String, MySqlCharset> parseCharsets(final File file, final MySqlCollatorMetrics metrics)
+			throws IOException, SAXException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			return parseCharsets(file.getPath(), in, metrics);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return charsets parsed from given stream mapped by name
+	 */
+	static Map<String, MySqlCharset> parseCharsets(final String source, final InputStream in,
+			final MySqlCollatorMetrics metrics) throws IOException, SAXException {
+		final Map<String, MySqlCharset> charsets = new HashMap<String, MySqlCharset>();
+		for (final Map.Entry<String, MySqlCharsetBean> e : parse(source, in, metrics).getCharsets().entrySet()) {
+			charsets.put(e.getKey(), new MySqlCharset(e.getValue()));
+		}
+		return charsets;
 	}
 
-	private static MySqlCharsetsBean parse(final InputStream in) throws IOException, SAXException {
-		return parse(new InputSource(in));
+	/**
+	 * @return all *.xml but Index.xml in given directory, sorted by name
+	 */
+	static File[] listCharsetFiles(final File dir) {
+		final File[] files = dir.listFiles(new CharsetFileFilter());
+		if (files == null) {
+			throw new IllegalArgumentException("not a directory = " + dir);
+		}
+		Arrays.sort(files);
+		return files;
 	}
 
 	/**
 	 * @return {@link MySqlCollatorFactory} containing all charsets from given
 	 *         directory considering all *.xml but Index.xml
 	 */
-	private static List<MySqlCharsetsBean> parseDirectory(final File dir) throws IOException, SAXException {
+	private static List<MySqlCharsetsBean> parseDirectory(final File dir, final MySqlCollatorMetrics metrics)
+			throws IOException, SAXException {
 		if (!dir.isDirectory()) {
 			throw new IllegalArgumentException("not a directory = " + dir);
 		}
@@ -216,7 +306,7 @@ public class MySqlCollatorFactory implements Serializable {
 
 		List<MySqlCharsetsBean> charsets = new ArrayList<MySqlCharsetsBean>(files.length);
 		for (final File file : files) {
-			charsets.add(parse(new FileInputStream(file)));
+			charsets.add(parse(file.getPath(), new FileInputStream(file), metrics));
 		}
 		return charsets;
 	}
@@ -239,10 +329,20 @@ public class MySqlCollatorFactory implements Serializable {
 	 * @throws SAXException
 	 */
 	public static MySqlCollatorFactory parseDefaultDirectory() throws IOException, SAXException {
+		return parseDefaultDirectory(null);
+	}
+
+	/**
+	 * @param metrics
+	 *            optional listener for parse duration of each file
+	 * @see #parseDefaultDirectory()
+	 */
+	public static MySqlCollatorFactory parseDefaultDirectory(final MySqlCollatorMetrics metrics) throws IOException,
+			SAXException {
 		final File dir = getDirectory();
 
 		if (dir.isDirectory()) {
-			return parse(dir);
+			return parse(dir, metrics);
 		} else {
 			if ("windows".equals(SystemProperty.OS_FAMILY.get())) {
 				throw new RuntimeException(
@@ -259,7 +359,7 @@ public class MySqlCollatorFactory implements Serializable {
 
 	}
 
-	private static File getDirectory() {
+	static File getDirectory() {
 		final String os = SystemProperty.OS_FAMILY.get();
 
 		if ("windows".equals(os)) {
@@ -287,6 +387,19 @@ public class MySqlCollatorFactory implements Serializable {
 		}
 	}
 
+	MySqlCollatorFactory(final Map<String, MySqlCharset> charsets) {
+		_charsets = charsets;
+	}
+
+	/**
+	 * write all charsets to a binary table file
+	 * 
+	 * @see #readTables(File)
+	 */
+	public void writeTables(final File file) throws IOException {
+		MySqlCharsetTables.write(_charsets.values(), file);
+	}
+
 	/**
 	 * @return {@link MySqlCharset} for given charset name
 	 * @throws IllegalArgumentException
@@ -300,6 +413,13 @@ public class MySqlCollatorFactory implements Serializable {
 		return cset;
 	}
 
+	/**
+	 * @return all available charsets
+	 */
+	public Collection<MySqlCharset> getCharsets() {
+		return Collections.unmodifiableCollection(_charsets.values());
+	}
+
 	/**
 	 * @return {@link MySqlCollation} for given charset and collation name
 	 * @throws IllegalArgumentException
@@ -342,6 +462,31 @@ public class MySqlCollatorFactory implements Serializable {
 		return "MySqlCollatorFactory [charsets=" + _charsets + "]";
 	}
 
+	public final Object writeReplace() throws ObjectStreamException {
+		return new SerializedFactory(MySqlCharsetTables.toBytes(_charsets.values()));
+	}
+
+	/**
+	 * serializes raw tables of all charsets in binary table format
+	 */
+	private static final class SerializedFactory implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] _tables;
+
+		private SerializedFactory(final byte[] tables) {
+			_tables = tables;
+		}
+
+		public final Object readResolve() throws ObjectStreamException {
+			try {
+				return read(ByteBuffer.wrap(_tables));
+			} catch (final IOException e) {
+				throw new InvalidObjectException(e.getMessage());
+			}
+		}
+	}
+
 	private static class CharsetFileFilter implements FilenameFilter {
 
 		@Override
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.xml.sax.SAXException;
+
+/**
+ * generates a dedicated final {@link MySqlCollator} subclass per collation
+ */
+public final class MySqlCollatorGenerator {
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final String DEFAULT_PACKAGE = MySqlCollatorGenerator.class.getPackage().getName() + ".generated";
+
+	/**
+	 * number of characters compared per loop iteration
+	 */
+	private static final int UNROLL = 4;
+
+	private MySqlCollatorGenerator() {
+	}
+
+	/**
+	 * generate sources of all collations of default directory
+	 * 
+	 * @param args
+	 *            output directory and optional package name
+	 * @throws IllegalArgumentException
+	 *             for invalid arguments
+	 */
+	public static void main(final String[] args) throws IOException, SAXException {
+		if (args.length < 1 || args.length > 2) {
+			throw new IllegalArgumentException("usage: " + MySqlCollatorGenerator.class.getName()
+					+ " <outputDir> [package]");
+		}
+		generate(MySqlCollatorFactory.parseDefaultDirectory(), new File(args[0]), args.length > 1 ? args[1]
+				: DEFAULT_PACKAGE);
+	}
+
+	/**
+	 * write one source file per collation of given factory to package directory
+	 * below given directory
+	 */
+	public static void generate(final MySqlCollatorFactory factory, final File dir, final String packageName)
+			throws IOException {
+		final File packageDir = new File(dir, packageName.replace('.', File.separatorChar));
+		if (!packageDir.isDirectory() && !packageDir.mkdirs()) {
+			throw new IOException("failed to create directory " + packageDir);
+		}
+		for (final MySqlCharset charset : factory.getCharsets()) {
+			for (final MySqlCollation collation : charset.getCollations().values()) {
+				final String className = toClassName(collation);
+				final Writer out = new OutputStreamWriter(new FileOutputStream(new File(packageDir, className
+						+ ".java")), ENCODING);
+				try {
+					out.write(generateSource(collation, packageName, className));
+				} finally {
+					out.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return class name for given collation, e.g. Latin1German1CiCollator
+	 *         for latin1_german1_ci
+	 */
+	public static String toClassName(final MySqlCollation collation) {
+		final StringBuilder buf = new StringBuilder();
+		boolean upper = true;
+		for (final char c : collation.getName().toCharArray()) {
+			if (c == '_' || !Character.isJavaIdentifierPart(c)) {
+				upper = true;
+			} else {
+				buf.append(upper ? Character.toUpperCase(c) : c);
+				upper = false;
+			}
+		}
+		return buf.append("Collator").toString();
+	}
+
+	/**
+	 * @return fingerprint of character mapping and weights of given collation,
+	 *         used by generated classes to detect mismatching tables
+	 */
+	public static long fingerprint(final MySqlCollation collation) {
+		return collation.getFingerprint();
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if collation doesn't match generated tables
+	 */
+	public static void checkFingerprint(final MySqlCollation collation, final String name, final long fingerprint) {
+		if (!collation.getName().equals(name) || fingerprint(collation) != fingerprint) {
+			throw new IllegalArgumentException("collator generated for " + name + " doesn't match tables of "
+					+ collation);
+		}
+	}
+
+	/**
+	 * @return Java source of a final {@link MySqlCollator} subclass
+	 */
+	public static String generateSource(final MySqlCollation collation, final String packageName,
+			final String className) {
+		final StringBuilder buf = new StringBuilder(32 * 1024);
+		if (packageName != null && packageName.length() > 0) {
+			buf.append("package ").append(packageName).append(";\n\n");
+		}
+		buf.append("import at.molindo.mysqlcollations.MySqlCollation;\n");
+		buf.append("import at.molindo.mysqlcollations.MySqlCollator;\n");
+		buf.append("import at.molindo.mysqlcollations.MySqlCollatorGenerator;\n");
+		buf.append("import at.molindo.mysqlcollations.UnmappableCharacterPolicy;\n\n");
+
+		buf.append("/**\n * generated by {@link MySqlCollatorGenerator} for ").append(collation.getName())
+				.append(", don't edit\n */\n");
+		buf.append("public final class ").append(className).append(" extends MySqlCollator {\n\n");
+		buf.append("\tprivate static final long serialVersionUID = 1L;\n\n");
+		buf.append("\tprivate static final String NAME = \"").append(collation.getName()).append("\";\n");
+		buf.append("\tprivate static final long FINGERPRINT = ").append(fingerprint(collation)).append("L;\n\n");
+
+		// char to weight tables, -1 for unmappable characters
+		final short[][] pages = new short[MySqlCharset.MAX_CHARACTERS][];
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			final int weight = collation.weight((char) c);
+			if (weight >= 0 || c >>> 8 == 0) {
+				short[] page = pages[c >>> 8];
+				if (page == null) {
+					page = pages[c >>> 8] = new short[MySqlCharset.MAX_CHARACTERS];
+					Arrays.fill(page, (short) -1);
+				}
+				page[c & 0xFF] = (short) weight;
+			}
+		}
+		for (int p = 0; p < pages.length; p++) {
+			if (pages[p] != null) {
+				buf.append("\tprivate static final short[] ").append(pageName(p)).append(" = {");
+				for (int i = 0; i < pages[p].length; i++) {
+					buf.append(i % 16 == 0 ? "\n\t\t\t" : " ").append(pages[p][i]).append(',');
+				}
+				buf.append(" };\n\n");
+			}
+		}
+		buf.append("\tprivate static final short[][] PAGES = new short[256][];\n\n");
+		buf.append("\tstatic {\n");
+		for (int p = 1; p < pages.length; p++) {
+			if (pages[p] != null) {
+				buf.append("\t\tPAGES[").append(p).append("] = ").append(pageName(p)).append(";\n");
+			}
+		}
+		buf.append("\t}\n\n");
+
+		buf.append("\tprivate final boolean _skip;\n");
+		buf.append("\tprivate final boolean _fail;\n\n");
+
+		buf.append("\tpublic ").append(className)
+				.append("(final MySqlCollation collation, final UnmappableCharacterPolicy policy) {\n");
+		buf.append("\t\tsuper(collation, policy);\n");
+		buf.append("\t\tMySqlCollatorGenerator.checkFingerprint(collation, NAME, FINGERPRINT);\n");
+		buf.append("\t\t_skip = policy == UnmappableCharacterPolicy.SKIP;\n");
+		buf.append("\t\t_fail = policy == UnmappableCharacterPolicy.FAIL;\n");
+		buf.append("\t}\n\n");
+
+		buf.append("\tprivate static int weight(final char c) {\n");
+		buf.append("\t\tif (c < 256) {\n");
+		buf.append("\t\t\treturn ").append(pageName(0)).append("[c];\n");
+		buf.append("\t\t}\n");
+		buf.append("\t\tfinal short[] page = PAGES[c >>> 8];\n");
+		buf.append("\t\treturn page == null ? -1 : page[c & 0xFF];\n");
+		buf.append("\t}\n\n");
+
+		buf.append("\t@Override\n");
+		buf.append("\tpublic int compare(final String source, final String target) {\n");
+		buf.append("\t\tif (source == target) {\n");
+		buf.append("\t\t\treturn 0;\n");
+		buf.append("\t\t}\n");
+		buf.append("\t\tfinal int length = Math.min(source.length(), target.length());\n");
+		buf.append("\t\tint i = 0;\n");
+		buf.append("\t\t// identical characters have identical weights, unmappable ones fail like hash\n");
+		buf.append("\t\tchar c;\n");
+		buf.append("\t\twhile (i < length && (c = source.charAt(i)) == target.charAt(i)");
+		buf.append(" && (!_fail || weight(c) >= 0)) {\n");
+		buf.append("\t\t\ti++;\n");
+		buf.append("\t\t}\n");
+		buf.append("\t\tint s, t;\n");
+		buf.append("\t\tfor (; i + ").append(UNROLL).append(" <= length; i += ").append(UNROLL).append(") {\n");
+		for (int u = 0; u < UNROLL; u++) {
+			appendCompare(buf, "\t\t\t", u == 0 ? "i" : "i + " + u);
+		}
+		buf.append("\t\t}\n");
+		buf.append("\t\tfor (; i < length; i++) {\n");
+		appendCompare(buf, "\t\t\t", "i");
+		buf.append("\t\t}\n");
+		buf.append("\t\tif (_skip && source.length() != target.length()) {\n");
+		buf.append("\t\t\t// remaining characters might be skipped\n");
+		buf.append("\t\t\treturn super.compare(source, target);\n");
+		buf.append("\t\t}\n");
+		buf.append("\t\treturn source.length() - target.length();\n");
+		buf.append("\t}\n\n");
+
+		buf.append("\tprivate int diff(final String source, final String target, final int s, final int t) {\n");
+		buf.append("\t\t// generic implementation applies unmappable policy\n");
+		buf.append("\t\treturn s < 0 || t < 0 ? super.compare(source, target) : s - t;\n");
+		buf.append("\t}\n\n");
+
+		buf.append("\t@Override\n");
+		buf.append("\tpublic MySqlCollator withUnmappablePolicy(final UnmappableCharacterPolicy policy) {\n");
+		buf.append("\t\treturn policy == getUnmappablePolicy() ? this : new ").append(className)
+				.append("(getCollation(), policy);\n");
+		buf.append("\t}\n");
+		buf.append("}\n");
+		return buf.toString();
+	}
+
+	private static void appendCompare(final StringBuilder buf, final String indent, final String index) {
+		buf.append(indent).append("s = weight(source.charAt(").append(index).append("));\n");
+		buf.append(indent).append("t = weight(target.charAt(").append(index).append("));\n");
+		buf.append(indent).append("if (s != t || s < 0) {\n");
+		buf.append(indent).append("\treturn diff(source, target, s, t);\n");
+		buf.append(indent).append("}\n");
+	}
+
+	private static String pageName(final int page) {
+		return String.format("PAGE_%02X", page);
+	}
+
+	/**
+	 * @see #compile(MySqlCollation, UnmappableCharacterPolicy)
+	 */
+	public static MySqlCollator compile(final MySqlCollation collation) {
+		return compile(collation, UnmappableCharacterPolicy.FAIL);
+	}
+
+	/**
+	 * generate and compile a collator class at runtime, loaded by its own
+	 * class loader
+	 * 
+	 * @throws IllegalStateException
+	 *             if no Java compiler is available (e.g. running on a JRE) or
+	 *             compilation fails
+	 */
+	public static MySqlCollator compile(final MySqlCollation collation, final UnmappableCharacterPolicy policy) {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IllegalStateException("no Java compiler available, generate sources at build time instead");
+		}
+
+		final String className = DEFAULT_PACKAGE + "." + toClassName(collation);
+		final String source = generateSource(collation, DEFAULT_PACKAGE, toClassName(collation));
+
+		final Map<String, ByteArrayOutputStream> classes = new HashMap<String, ByteArrayOutputStream>();
+		final StandardJavaFileManager standardManager = compiler.getStandardFileManager(null, null, null);
+		final JavaFileManager manager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardManager) {
+
+			@Override
+			public JavaFileObject getJavaFileForOutput(final Location location, final String name, final Kind kind,
+					final FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+
+					@Override
+					public OutputStream openOutputStream() {
+						final ByteArrayOutputStream out = new ByteArrayOutputStream();
+						classes.put(name, out);
+						return out;
+					}
+				};
+			}
+		};
+
+		final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///"
+				+ className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE) {
+
+			@Override
+			public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		final Writer errors = new StringWriter();
+		final Boolean success;
+		try {
+			success = compiler.getTask(errors, manager, null, Arrays.asList("-classpath", classPath(), "-nowarn"),
+					null, Arrays.asList(file)).call();
+		} finally {
+			try {
+				manager.close();
+			} catch (final IOException e) {
+				// nothing written to disk, nothing to lose
+			}
+		}
+		if (!Boolean.TRUE.equals(success)) {
+			throw new IllegalStateException("compiling " + className + " failed: " + errors);
+		}
+
+		try {
+			final Class<?> cls = new GeneratedClassLoader(classes).loadClass(className);
+			final Constructor<?> constructor = cls.getConstructor(MySqlCollation.class,
+					UnmappableCharacterPolicy.class);
+			return (MySqlCollator) constructor.newInstance(collation, policy);
+		} catch (final Exception e) {
+			throw new IllegalStateException("loading " + className + " failed", e);
+		}
+	}
+
+	/**
+	 * @return class path containing this library
+	 */
+	private static String classPath() {
+		final String classPath = System.getProperty("java.class.path", "");
+		try {
+			final String location = new File(MySqlCollator.class.getProtectionDomain().getCodeSource().getLocation()
+					.toURI()).getPath();
+			return classPath.length() == 0 ? location : location + File.pathSeparator + classPath;
+		} catch (final Exception e) {
+			// no code source, e.g. restricted by security manager
+			return classPath;
+		}
+	}
+
+	private static final class GeneratedClassLoader extends ClassLoader {
+		private final Map<String, ByteArrayOutputStream> _classes;
+
+		private GeneratedClassLoader(final Map<String, ByteArrayOutputStream> classes) {
+			super(MySqlCollator.class.getClassLoader());
+			_classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(final String name) throws ClassNotFoundException {
+			final ByteArrayOutputStream out = _classes.get(name);
+			if (out == null) {
+				throw new ClassNotFoundException(name);
+			}
+			final byte[] bytes = out.toByteArray();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
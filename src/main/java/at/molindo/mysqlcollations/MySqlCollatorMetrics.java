@@ -0,0 +1,61 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+/**
+ * listener for instrumentation of collators and factories
+ * 
+ * @see MySqlCollatorStatistics
+ */
+public interface MySqlCollatorMetrics {
+
+	/**
+	 * called for each compare or equals
+	 * 
+	 * @param sourceLength
+	 *            length of first string
+	 * @param targetLength
+	 *            length of second string
+	 */
+	void compared(MySqlCollation collation, int sourceLength, int targetLength);
+
+	/**
+	 * called for each created {@link MySqlCollationKey}
+	 */
+	void keyCreated(MySqlCollation collation, int characters);
+
+	/**
+	 * called for each hash or abbreviated key
+	 */
+	void hashed(MySqlCollation collation, int characters);
+
+	/**
+	 * called for each unmappable character of a string passed to an
+	 * instrumented collator, i.e. whenever the unmappable policy is applied.
+	 * For {@link UnmappableCharacterPolicy#FAIL} only the character of the
+	 * thrown {@link UnmappableCharacterException} is reported.
+	 */
+	void unmappable(MySqlCharset charset, char character);
+
+	/**
+	 * called for each parsed charset file
+	 * 
+	 * @param source
+	 *            file path or URL
+	 */
+	void parsed(String source, long nanos);
+}
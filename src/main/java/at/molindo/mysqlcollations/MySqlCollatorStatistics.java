@@ -0,0 +1,176 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link MySqlCollatorMetrics} collecting counters and a histogram of string
+ * lengths in memory
+ */
+public class MySqlCollatorStatistics implements MySqlCollatorMetrics {
+
+	/**
+	 * number of buckets of {@link #getLengthHistogram()}
+	 */
+	public static final int BUCKETS = 33;
+
+	private final StripedCounter _compares = new StripedCounter();
+	private final StripedCounter _compareCharacters = new StripedCounter();
+	private final StripedCounter _keys = new StripedCounter();
+	private final StripedCounter _keyCharacters = new StripedCounter();
+	private final StripedCounter _hashes = new StripedCounter();
+	private final StripedCounter[] _lengths = new StripedCounter[BUCKETS];
+
+	private final ConcurrentMap<String, StripedCounter> _unmappable = new ConcurrentHashMap<String, StripedCounter>();
+	private final ConcurrentMap<String, Long> _parseNanos = new ConcurrentHashMap<String, Long>();
+
+	public MySqlCollatorStatistics() {
+		for (int i = 0; i < _lengths.length; i++) {
+			_lengths[i] = new StripedCounter();
+		}
+	}
+
+	@Override
+	public void compared(final MySqlCollation collation, final int sourceLength, final int targetLength) {
+		_compares.increment();
+		_compareCharacters.add(sourceLength + targetLength);
+		_lengths[bucket(sourceLength)].increment();
+		_lengths[bucket(targetLength)].increment();
+	}
+
+	@Override
+	public void keyCreated(final MySqlCollation collation, final int characters) {
+		_keys.increment();
+		_keyCharacters.add(characters);
+		_lengths[bucket(characters)].increment();
+	}
+
+	@Override
+	public void hashed(final MySqlCollation collation, final int characters) {
+		_hashes.increment();
+		_lengths[bucket(characters)].increment();
+	}
+
+	@Override
+	public void unmappable(final MySqlCharset charset, final char character) {
+		StripedCounter counter = _unmappable.get(charset.getName());
+		if (counter == null) {
+			final StripedCounter prev = _unmappable.putIfAbsent(charset.getName(), counter = new StripedCounter());
+			if (prev != null) {
+				counter = prev;
+			}
+		}
+		counter.increment();
+	}
+
+	@Override
+	public void parsed(final String source, final long nanos) {
+		_parseNanos.put(source, nanos);
+	}
+
+	/**
+	 * @return bucket i counts strings with a length of [2^(i-1), 2^i)
+	 *         characters, bucket 0 counts empty strings
+	 */
+	private static int bucket(final int characters) {
+		return Integer.SIZE - Integer.numberOfLeadingZeros(characters);
+	}
+
+	/**
+	 * @return number of compare and equals calls
+	 */
+	public long getCompares() {
+		return _compares.sum();
+	}
+
+	/**
+	 * @return total length of strings passed to compare and equals
+	 */
+	public long getCompareCharacters() {
+		return _compareCharacters.sum();
+	}
+
+	/**
+	 * @return number of created collation keys
+	 */
+	public long getKeys() {
+		return _keys.sum();
+	}
+
+	/**
+	 * @return total length of strings passed to getCollationKey
+	 */
+	public long getKeyCharacters() {
+		return _keyCharacters.sum();
+	}
+
+	/**
+	 * @return number of hashes and abbreviated keys
+	 */
+	public long getHashes() {
+		return _hashes.sum();
+	}
+
+	/**
+	 * @return number of strings by length (compare and equals count both
+	 *         strings), bucket i counts strings with [2^(i-1), 2^i)
+	 *         characters, bucket 0 counts empty strings
+	 */
+	public long[] getLengthHistogram() {
+		final long[] histogram = new long[BUCKETS];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = _lengths[i].sum();
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return number of unmappable characters for given charset name
+	 */
+	public long getUnmappable(final String charset) {
+		final StripedCounter counter = _unmappable.get(charset);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * @return number of unmappable characters mapped by charset name
+	 */
+	public Map<String, Long> getUnmappable() {
+		final Map<String, Long> unmappable = new HashMap<String, Long>();
+		for (final Map.Entry<String, StripedCounter> e : _unmappable.entrySet()) {
+			unmappable.put(e.getKey(), e.getValue().sum());
+		}
+		return unmappable;
+	}
+
+	/**
+	 * @return parse duration in nanoseconds mapped by charset file
+	 */
+	public Map<String, Long> getParseNanos() {
+		return new HashMap<String, Long>(_parseNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlCollatorStatistics [compares=" + getCompares() + ", keys=" + getKeys() + ", hashes="
+				+ getHashes() + ", unmappable=" + getUnmappable() + "]";
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.Arrays;
+
+/**
+ * builds byte keys of multiple columns, comparing like their columns under
+ * unsigned byte comparison
+ */
+public final class MySqlCompositeKeyBuilder {
+
+	/**
+	 * column markers, sorting NULL first as MySQL does for ascending order.
+	 * Columns marked {@link #desc()} are inverted, which sorts NULL last.
+	 */
+	private static final byte NULL = 0x00;
+	private static final byte NOT_NULL = 0x01;
+
+	/**
+	 * number of weights per PAD SPACE chunk
+	 */
+	private static final int CHUNK = 8;
+
+	/**
+	 * PAD SPACE markers following each chunk
+	 */
+	private static final byte LESS_THAN_SPACES = 0x01;
+	private static final byte SPACES = 0x02;
+	private static final byte GREATER_THAN_SPACES = 0x03;
+
+	private byte[] _bytes;
+	private int _length;
+
+	private byte[] _weights = new byte[64];
+
+	private int _columns;
+	private boolean _descending;
+
+	public MySqlCompositeKeyBuilder() {
+		this(64);
+	}
+
+	public MySqlCompositeKeyBuilder(final int capacity) {
+		_bytes = new byte[Math.max(capacity, 16)];
+	}
+
+	/**
+	 * encode next column in descending order
+	 */
+	public MySqlCompositeKeyBuilder desc() {
+		_descending = true;
+		return this;
+	}
+
+	/**
+	 * append string column compared by given collator, null for NULL
+	 */
+	public MySqlCompositeKeyBuilder append(final MySqlCollator collator, final CharSequence value) {
+		final int start = _length;
+		if (appendMarker(value == null)) {
+			final int length = weights(collator, value);
+			ensureCapacity(MySqlCollationKey.delimitedLength(_weights, length));
+			_length = MySqlCollationKey.writeDelimited(_weights, length, _bytes, _length);
+		}
+		return endColumn(start);
+	}
+
+	/**
+	 * append string column compared by given collator, ignoring trailing
+	 * spaces like MySQL's PAD SPACE collations (i.e. 'a' = 'a ' and 'a\t' &lt;
+	 * 'a'), null for NULL
+	 */
+	public MySqlCompositeKeyBuilder appendPadSpace(final MySqlCollator collator, final CharSequence value) {
+		final int start = _length;
+		if (appendMarker(value == null)) {
+			final int space = collator.spaceWeight();
+			int length = weights(collator, value);
+			while (length > 0 && (_weights[length - 1] & 0xFF) == space) {
+				length--;
+			}
+
+			final int chunks = Math.max(1, (length + CHUNK - 1) / CHUNK);
+			ensureCapacity(chunks * (CHUNK + 1));
+
+			// first weight after current position that isn't a space
+			int nonSpace = 0;
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				final int from = chunk * CHUNK;
+				for (int i = from; i < from + CHUNK; i++) {
+					_bytes[_length++] = i < length ? _weights[i] : (byte) space;
+				}
+				if (from + CHUNK >= length) {
+					_bytes[_length++] = SPACES;
+				} else {
+					nonSpace = Math.max(nonSpace, from + CHUNK);
+					while ((_weights[nonSpace] & 0xFF) == space) {
+						// always terminates as trailing spaces are removed
+						nonSpace++;
+					}
+					_bytes[_length++] = (_weights[nonSpace] & 0xFF) < space ? LESS_THAN_SPACES : GREATER_THAN_SPACES;
+				}
+			}
+		}
+		return endColumn(start);
+	}
+
+	/**
+	 * append numeric column
+	 */
+	public MySqlCompositeKeyBuilder append(final long value) {
+		final int start = _length;
+		appendMarker(false);
+		appendLong(value ^ Long.MIN_VALUE);
+		return endColumn(start);
+	}
+
+	/**
+	 * append numeric column, null for NULL
+	 */
+	public MySqlCompositeKeyBuilder append(final Long value) {
+		return value == null ? appendNull() : append(value.longValue());
+	}
+
+	/**
+	 * append floating point column, -0.0 equals 0.0 and NaN is greater than
+	 * any other value
+	 */
+	public MySqlCompositeKeyBuilder append(final double value) {
+		final int start = _length;
+		appendMarker(false);
+		final long bits = Double.doubleToLongBits(value == 0.0 ? 0.0 : value);
+		appendLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+		return endColumn(start);
+	}
+
+	/**
+	 * append floating point column, null for NULL
+	 */
+	public MySqlCompositeKeyBuilder append(final Double value) {
+		return value == null ? appendNull() : append(value.doubleValue());
+	}
+
+	/**
+	 * append NULL column
+	 */
+	public MySqlCompositeKeyBuilder appendNull() {
+		final int start = _length;
+		appendMarker(true);
+		return endColumn(start);
+	}
+
+	/**
+	 * @return true if value follows marker
+	 */
+	private boolean appendMarker(final boolean isNull) {
+		ensureCapacity(1);
+		_bytes[_length++] = isNull ? NULL : NOT_NULL;
+		return !isNull;
+	}
+
+	private void appendLong(final long value) {
+		ensureCapacity(8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			_bytes[_length++] = (byte) (value >>> shift);
+		}
+	}
+
+	private int weights(final MySqlCollator collator, final CharSequence value) {
+		if (_weights.length < value.length()) {
+			_weights = new byte[Math.max(value.length(), _weights.length * 2)];
+		}
+		return collator.weights(value, _weights);
+	}
+
+	private MySqlCompositeKeyBuilder endColumn(final int start) {
+		if (_descending) {
+			// column encodings are prefix-free, hence inverting reverses order
+			for (int i = start; i < _length; i++) {
+				_bytes[i] = (byte) ~_bytes[i];
+			}
+			_descending = false;
+		}
+		_columns++;
+		return this;
+	}
+
+	private void ensureCapacity(final int additional) {
+		if (_length + additional > _bytes.length) {
+			_bytes = Arrays.copyOf(_bytes, Math.max(_length + additional, _bytes.length * 2));
+		}
+	}
+
+	/**
+	 * @return key of all columns appended since creation or last
+	 *         {@link #reset()}
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(_bytes, _length);
+	}
+
+	/**
+	 * start a new key
+	 */
+	public MySqlCompositeKeyBuilder reset() {
+		_length = 0;
+		_columns = 0;
+		_descending = false;
+		return this;
+	}
+
+	/**
+	 * @return current key length in bytes
+	 */
+	public int length() {
+		return _length;
+	}
+
+	/**
+	 * @return number of columns of current key
+	 */
+	public int getColumns() {
+		return _columns;
+	}
+
+	/**
+	 * unsigned lexicographic comparison of keys, shorter keys first
+	 */
+	public static int compare(final byte[] a, final byte[] b) {
+		final int min = Math.min(a.length, b.length);
+		for (int i = 0; i < min; i++) {
+			if (a[i] != b[i]) {
+				return (a[i] & 0xFF) - (b[i] & 0xFF);
+			}
+		}
+		return a.length - b.length;
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlCompositeKeyBuilder [columns=" + _columns + ", length=" + _length + "]";
+	}
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.Collection;
+
+/**
+ * order-preserving dictionary of strings according to a {@link MySqlCollator}
+ */
+public final class MySqlDictionary {
+
+	private final MySqlCollator _collator;
+
+	/**
+	 * values in collation order, indexed by code
+	 */
+	private final String[] _values;
+
+	/**
+	 * dictionary contains NULL, using code 0 as NULL sorts first in MySQL
+	 */
+	private final boolean _null;
+
+	/**
+	 * number of strings added for each code
+	 */
+	private final long[] _counts;
+
+	/**
+	 * groups of all values, used for lookups only
+	 */
+	private final MySqlGroupTable _groups;
+
+	/**
+	 * code of each group of {@link #_groups}
+	 */
+	private final int[] _codes;
+
+	private MySqlDictionary(final MySqlGroupTable groups) {
+		_collator = groups.getCollator();
+		_groups = groups;
+
+		_values = groups.getValues();
+		final int nullGroup = groups.find(null);
+		_null = nullGroup >= 0;
+		if (_null) {
+			_values[nullGroup] = _values[0];
+			_values[0] = null;
+		}
+		_collator.sort(_values, _null ? 1 : 0, _values.length);
+
+		_codes = new int[_values.length];
+		_counts = new long[_values.length];
+		for (int code = 0; code < _values.length; code++) {
+			final int group = groups.find(_values[code]);
+			_codes[group] = code;
+			_counts[code] = groups.getCount(group);
+		}
+	}
+
+	public static Builder builder(final MySqlCollator collator) {
+		return new Builder(collator);
+	}
+
+	/**
+	 * @return dictionary of given values
+	 */
+	public static MySqlDictionary build(final MySqlCollator collator, final Collection<String> values) {
+		return builder(collator).addAll(values).build();
+	}
+
+	/**
+	 * @return code of given value (0 for NULL) or -1 if value isn't part of
+	 *         this dictionary
+	 */
+	public int encode(final String value) {
+		final int group = _groups.find(value);
+		return group < 0 ? -1 : _codes[group];
+	}
+
+	/**
+	 * @return codes of given values
+	 * @throws IllegalArgumentException
+	 *             if a value isn't part of this dictionary
+	 */
+	public int[] encode(final String[] values) {
+		final int[] codes = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			codes[i] = encode(values[i]);
+			if (codes[i] < 0) {
+				throw new IllegalArgumentException("value not in dictionary: " + values[i]);
+			}
+		}
+		return codes;
+	}
+
+	/**
+	 * @return first string added for given code, null for NULL
+	 */
+	public String decode(final int code) {
+		checkCode(code);
+		return _values[code];
+	}
+
+	/**
+	 * @return strings for given codes
+	 */
+	public String[] decode(final int[] codes) {
+		final String[] values = new String[codes.length];
+		for (int i = 0; i < codes.length; i++) {
+			values[i] = decode(codes[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * binary search for given value, e.g. to translate range predicates with
+	 * values not part of this dictionary
+	 * 
+	 * @return code of value if contained, otherwise (-(insertion point) - 1),
+	 *         NULL sorts first
+	 * @see java.util.Arrays#binarySearch(Object[], Object, java.util.Comparator)
+	 */
+	public int search(final String value) {
+		if (value == null) {
+			return _null ? 0 : -1;
+		}
+		int low = _null ? 1 : 0;
+		int high = _values.length - 1;
+		while (low <= high) {
+			final int mid = low + high >>> 1;
+			final int cmp = _collator.compare(_values[mid], value);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * @return number of strings added for given code
+	 */
+	public long getCount(final int code) {
+		checkCode(code);
+		return _counts[code];
+	}
+
+	/**
+	 * @return number of codes
+	 */
+	public int size() {
+		return _values.length;
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	private void checkCode(final int code) {
+		if (code < 0 || code >= _values.length) {
+			throw new IndexOutOfBoundsException("code=" + code + ", size=" + _values.length);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlDictionary [size=" + _values.length + ", collator=" + _collator + "]";
+	}
+
+	/**
+	 * collects strings of a dictionary, not thread-safe
+	 */
+	public static final class Builder {
+
+		private final MySqlGroupTable _groups;
+		private boolean _built;
+
+		private Builder(final MySqlCollator collator) {
+			_groups = new MySqlGroupTable(collator);
+		}
+
+		/**
+		 * add value, null for NULL
+		 */
+		public Builder add(final String value) {
+			checkNotBuilt();
+			_groups.add(value);
+			return this;
+		}
+
+		public Builder addAll(final Collection<String> values) {
+			checkNotBuilt();
+			for (final String value : values) {
+				_groups.add(value);
+			}
+			return this;
+		}
+
+		public Builder addAll(final String[] values) {
+			checkNotBuilt();
+			for (final String value : values) {
+				_groups.add(value);
+			}
+			return this;
+		}
+
+		/**
+		 * add all strings of other builder, keeping strings of this builder if
+		 * equal. Merge partial builders in order of their input to keep the
+		 * first string seen overall.
+		 * 
+		 * @throws IllegalArgumentException
+		 *             if builders use different collators
+		 */
+		public Builder merge(final Builder other) {
+			checkNotBuilt();
+			_groups.merge(other._groups);
+			return this;
+		}
+
+		/**
+		 * @return new dictionary, builder can't be used afterwards
+		 */
+		public MySqlDictionary build() {
+			checkNotBuilt();
+			_built = true;
+			return new MySqlDictionary(_groups);
+		}
+
+		private void checkNotBuilt() {
+			if (_built) {
+				throw new IllegalStateException("dictionary already built");
+			}
+		}
+	}
+}
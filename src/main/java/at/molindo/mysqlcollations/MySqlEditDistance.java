@@ -0,0 +1,225 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+/**
+ * Levenshtein distance to a fixed pattern in weight space of a
+ * {@link MySqlCollator}
+ * 
+ * @see MySqlCollator#compileEditDistance(String)
+ */
+public final class MySqlEditDistance {
+
+	private static final int WORD = 64;
+
+	private final MySqlCollator _collator;
+	private final String _pattern;
+
+	private final int _length;
+	private final int _blocks;
+
+	/**
+	 * bitmask of pattern positions for each weight and block, indexed by
+	 * weight * blocks + block
+	 */
+	private final long[] _peq;
+
+	/**
+	 * bit of last pattern position in last block
+	 */
+	private final long _last;
+
+	MySqlEditDistance(final MySqlCollator collator, final String pattern) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		if (pattern == null) {
+			throw new NullPointerException("pattern");
+		}
+		_collator = collator;
+		_pattern = pattern;
+
+		final CharSequence weighted = collator.skipUnmappable(pattern);
+		final int m = weighted.length();
+		_length = m;
+		_blocks = Math.max(1, (m + WORD - 1) / WORD);
+		_peq = new long[MySqlCharset.MAX_CHARACTERS * _blocks];
+		for (int i = 0; i < m; i++) {
+			final int weight = collator.weightOf(weighted.charAt(i));
+			_peq[weight * _blocks + i / WORD] |= 1L << (i % WORD);
+		}
+		_last = m == 0 ? 0 : 1L << ((m - 1) % WORD);
+	}
+
+	/**
+	 * @return edit distance between pattern and string, treating unmappable
+	 *         characters like the collator's {@link UnmappableCharacterPolicy}
+	 * @throws UnmappableCharacterException
+	 *             for unmappable characters using
+	 *             {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	public int distance(final CharSequence string) {
+		return distance(string, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return edit distance between pattern and string or max + 1 if distance
+	 *         is greater than max, computation stops as soon as max is exceeded
+	 */
+	public int distance(final CharSequence string, final int max) {
+		if (max < 0) {
+			throw new IllegalArgumentException("max must not be negative: " + max);
+		}
+		return distanceSkipped(_collator.skipUnmappable(string), max);
+	}
+
+	private int distanceSkipped(final CharSequence string, final int max) {
+		final int m = _length;
+		final int n = string.length();
+		if (Math.abs(m - n) > max) {
+			return max + 1;
+		}
+		if (m == 0) {
+			return n;
+		}
+		return _blocks == 1 ? distanceWord(string, max) : distanceBlocks(string, max);
+	}
+
+	/**
+	 * @return true if edit distance between pattern and string is at most max
+	 */
+	public boolean matches(final CharSequence string, final int max) {
+		return distance(string, max) <= max;
+	}
+
+	/**
+	 * single word for patterns of up to 64 characters
+	 */
+	private int distanceWord(final CharSequence string, final int max) {
+		final long[] peq = _peq;
+		final long last = _last;
+		final int n = string.length();
+
+		// vertical deltas, +1 in first column
+		long pv = -1L;
+		long mv = 0L;
+		int score = _length;
+
+		for (int j = 0; j < n; j++) {
+			final long eq = peq[_collator.weightOf(string.charAt(j))];
+
+			final long xv = eq | mv;
+			final long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+
+			if ((ph & last) != 0) {
+				score++;
+			} else if ((mh & last) != 0) {
+				score--;
+			}
+
+			// horizontal delta of first row is +1
+			ph = ph << 1 | 1L;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+
+			// each remaining character decreases score by at most 1
+			if (score - (n - j - 1) > max) {
+				return max + 1;
+			}
+		}
+		return score <= max ? score : max + 1;
+	}
+
+	/**
+	 * one word per block of 64 pattern characters, carrying horizontal deltas
+	 * from block to block
+	 */
+	private int distanceBlocks(final CharSequence string, final int max) {
+		final long[] peq = _peq;
+		final int blocks = _blocks;
+		final long last = _last;
+		final int n = string.length();
+
+		final long[] pvs = new long[blocks];
+		final long[] mvs = new long[blocks];
+		for (int b = 0; b < blocks; b++) {
+			pvs[b] = -1L;
+		}
+		int score = _length;
+
+		for (int j = 0; j < n; j++) {
+			final int offset = _collator.weightOf(string.charAt(j)) * blocks;
+
+			// horizontal delta entering block, +1 for first row
+			int hin = 1;
+			for (int b = 0; b < blocks; b++) {
+				final long pv = pvs[b];
+				final long mv = mvs[b];
+				long eq = peq[offset + b];
+
+				final long xv = eq | mv;
+				if (hin < 0) {
+					eq |= 1L;
+				}
+				final long xh = (((eq & pv) + pv) ^ pv) | eq;
+				long ph = mv | ~(xh | pv);
+				long mh = pv & xh;
+
+				final long high = b == blocks - 1 ? last : 1L << (WORD - 1);
+				final int hout = (ph & high) != 0 ? 1 : (mh & high) != 0 ? -1 : 0;
+
+				ph <<= 1;
+				mh <<= 1;
+				if (hin < 0) {
+					mh |= 1L;
+				} else if (hin > 0) {
+					ph |= 1L;
+				}
+				pvs[b] = mh | ~(xv | ph);
+				mvs[b] = ph & xv;
+				hin = hout;
+			}
+			score += hin;
+
+			if (score - (n - j - 1) > max) {
+				return max + 1;
+			}
+		}
+		return score <= max ? score : max + 1;
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	public MySqlCollation getCollation() {
+		return _collator.getCollation();
+	}
+
+	public String getPattern() {
+		return _pattern;
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlEditDistance [pattern=" + _pattern + ", collation=" + getCollation().getName() + "]";
+	}
+
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.Arrays;
+
+/**
+ * groups strings equal according to a {@link MySqlCollator}, as MySQL does for
+ * GROUP BY and DISTINCT
+ */
+public class MySqlGroupTable {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final MySqlCollator _collator;
+
+	/**
+	 * group id + 1 for each slot, 0 for empty slots
+	 */
+	private int[] _slots;
+
+	private int[] _hashes;
+	private String[] _values;
+	private long[] _counts;
+
+	private int _size;
+
+	/**
+	 * group id of NULL values, -1 if there are none
+	 */
+	private int _nullGroup = -1;
+
+	public MySqlGroupTable(final MySqlCollator collator) {
+		this(collator, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity
+	 *            expected number of groups
+	 */
+	public MySqlGroupTable(final MySqlCollator collator, final int capacity) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		_collator = collator;
+
+		final int groups = Math.max(capacity, DEFAULT_CAPACITY);
+		_slots = new int[tableSize(groups)];
+		_hashes = new int[groups];
+		_values = new String[groups];
+		_counts = new long[groups];
+	}
+
+	/**
+	 * @return power of 2 keeping load factor at or below 0.5
+	 */
+	private static int tableSize(final int groups) {
+		return Integer.highestOneBit(Math.max(groups, 1) * 2 - 1) << 1;
+	}
+
+	/**
+	 * add a value to its group, creating a new group if necessary. All NULL
+	 * values form a single group, as in MySQL.
+	 * 
+	 * @return group id
+	 */
+	public int add(final String value) {
+		return value == null ? addNull(1) : add(value, _collator.hash(value), 1);
+	}
+
+	/**
+	 * @return group id of given value or -1 if there is no such group
+	 */
+	public int find(final String value) {
+		if (value == null) {
+			return _nullGroup;
+		}
+		final int hash = _collator.hash(value);
+		final int mask = _slots.length - 1;
+		for (int i = mix(hash) & mask;; i = (i + 1) & mask) {
+			final int group = _slots[i] - 1;
+			if (group < 0) {
+				return -1;
+			}
+			if (_hashes[group] == hash && _collator.equals(_values[group], value)) {
+				return group;
+			}
+		}
+	}
+
+	private int add(final String value, final int hash, final long count) {
+		final int mask = _slots.length - 1;
+		for (int i = mix(hash) & mask;; i = (i + 1) & mask) {
+			final int group = _slots[i] - 1;
+			if (group < 0) {
+				return insert(i, value, hash, count);
+			}
+			if (_hashes[group] == hash && _collator.equals(_values[group], value)) {
+				_counts[group] += count;
+				return group;
+			}
+		}
+	}
+
+	private int addNull(final long count) {
+		if (_nullGroup < 0) {
+			_nullGroup = newGroup(null, 0, count);
+		} else {
+			_counts[_nullGroup] += count;
+		}
+		return _nullGroup;
+	}
+
+	private int insert(final int slot, final String value, final int hash, final long count) {
+		final int group = newGroup(value, hash, count);
+		_slots[slot] = group + 1;
+
+		if (_size * 2 > _slots.length) {
+			rehash(_slots.length * 2);
+		}
+		return group;
+	}
+
+	private int newGroup(final String value, final int hash, final long count) {
+		final int group = _size++;
+		if (group == _values.length) {
+			final int groups = group * 2;
+			_hashes = Arrays.copyOf(_hashes, groups);
+			_values = Arrays.copyOf(_values, groups);
+			_counts = Arrays.copyOf(_counts, groups);
+		}
+		_hashes[group] = hash;
+		_values[group] = value;
+		_counts[group] = count;
+		return group;
+	}
+
+	private void rehash(final int size) {
+		final int[] slots = new int[size];
+		final int mask = size - 1;
+		for (int group = 0; group < _size; group++) {
+			if (group == _nullGroup) {
+				continue;
+			}
+			int i = mix(_hashes[group]) & mask;
+			while (slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			slots[i] = group + 1;
+		}
+		_slots = slots;
+	}
+
+	/**
+	 * spread hash bits as collation hashes are poorly distributed in their
+	 * lower bits for short strings
+	 */
+	private static int mix(final int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * add all groups of other table to this table. Representatives of this
+	 * table are kept, hence merge partial tables in order of their input to
+	 * keep the first value seen overall.
+	 * 
+	 * @return group ids of this table indexed by group ids of other table, used
+	 *         to merge caller's aggregates
+	 * @throws IllegalArgumentException
+	 *             if tables use different collations
+	 */
+	public int[] merge(final MySqlGroupTable other) {
+		if (!other._collator.getCollation().isEquivalent(_collator.getCollation())
+				|| other._collator.getUnmappablePolicy() != _collator.getUnmappablePolicy()) {
+			throw new IllegalArgumentException("can't merge tables of different collators");
+		}
+		final int[] groups = new int[other._size];
+		for (int group = 0; group < other._size; group++) {
+			final String value = other._values[group];
+			groups[group] = value == null ? addNull(other._counts[group]) : add(value, other._hashes[group],
+					other._counts[group]);
+		}
+		return groups;
+	}
+
+	/**
+	 * @return number of groups
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * @return first value added to given group, null for the NULL group
+	 */
+	public String getValue(final int group) {
+		checkGroup(group);
+		return _values[group];
+	}
+
+	/**
+	 * @return number of values added to given group
+	 */
+	public long getCount(final int group) {
+		checkGroup(group);
+		return _counts[group];
+	}
+
+	/**
+	 * @return first value of each group in order of group ids, as MySQL's
+	 *         SELECT DISTINCT
+	 */
+	public String[] getValues() {
+		return Arrays.copyOf(_values, _size);
+	}
+
+	private void checkGroup(final int group) {
+		if (group < 0 || group >= _size) {
+			throw new IndexOutOfBoundsException("group=" + group + ", size=" + _size);
+		}
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlGroupTable [size=" + _size + ", collator=" + _collator + "]";
+	}
+}
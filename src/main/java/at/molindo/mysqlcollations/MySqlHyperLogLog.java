@@ -0,0 +1,165 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct strings according to a
+ * {@link MySqlCollator}
+ */
+public final class MySqlHyperLogLog extends CollatedSketch {
+
+	private static final int MAGIC = 0x4D59484C; // MYHL
+
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 18;
+
+	private final int _precision;
+
+	/**
+	 * 2^precision registers holding the maximum rank seen
+	 */
+	private final byte[] _registers;
+
+	/**
+	 * @param precision
+	 *            number of index bits, standard error is about
+	 *            1.04/sqrt(2^precision)
+	 */
+	public MySqlHyperLogLog(final MySqlCollator collator, final int precision) {
+		this(collator, precision, new byte[1 << checkPrecision(precision)]);
+	}
+
+	private MySqlHyperLogLog(final MySqlCollator collator, final int precision, final byte[] registers) {
+		super(collator);
+		_precision = precision;
+		_registers = registers;
+	}
+
+	private static int checkPrecision(final int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and "
+					+ MAX_PRECISION + ": " + precision);
+		}
+		return precision;
+	}
+
+	public void add(final CharSequence string) {
+		final long hash = getCollator().longHash(string);
+		final int index = (int) (hash >>> Long.SIZE - _precision);
+		// rank of first 1 bit of remaining bits, a stop bit limits rank
+		final int rank = Long.numberOfLeadingZeros(hash << _precision | 1L << _precision - 1) + 1;
+		if (rank > _registers[index]) {
+			_registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * @return estimated number of distinct strings added
+	 */
+	public long estimate() {
+		final int m = _registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (final byte register : _registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		final double estimate = alpha(m) * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// linear counting for small cardinalities
+			return Math.round(m * Math.log((double) m / zeros));
+		}
+		return Math.round(estimate);
+	}
+
+	private static double alpha(final int m) {
+		switch (m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+	/**
+	 * add all strings of other sketch to this sketch
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if sketches use different collators or precisions
+	 */
+	public void merge(final MySqlHyperLogLog other) {
+		checkCompatible(other);
+		if (other._precision != _precision) {
+			throw new IllegalArgumentException("can't merge sketches of different precision");
+		}
+		for (int i = 0; i < _registers.length; i++) {
+			if (other._registers[i] > _registers[i]) {
+				_registers[i] = other._registers[i];
+			}
+		}
+	}
+
+	public int getPrecision() {
+		return _precision;
+	}
+
+	@Override
+	public void writeTo(final DataOutput out) throws IOException {
+		writeHeader(out, MAGIC);
+		out.writeByte(_precision);
+		out.write(_registers);
+	}
+
+	/**
+	 * @return sketch read from stream written by {@link #writeTo(DataOutput)}
+	 * @throws IllegalArgumentException
+	 *             if sketch was written using another collation or policy
+	 */
+	public static MySqlHyperLogLog readFrom(final DataInput in, final MySqlCollator collator) throws IOException {
+		readHeader(in, MAGIC, collator);
+		final int precision = in.readUnsignedByte();
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IOException("invalid precision: " + precision);
+		}
+		final byte[] registers = new byte[1 << precision];
+		in.readFully(registers);
+		return new MySqlHyperLogLog(collator, precision, registers);
+	}
+
+	/**
+	 * @return sketch from bytes returned by {@link #toByteArray()}
+	 */
+	public static MySqlHyperLogLog fromByteArray(final byte[] bytes, final MySqlCollator collator) throws IOException {
+		return readFrom(toDataInput(bytes), collator);
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlHyperLogLog [precision=" + _precision + ", estimate=" + estimate() + ", collator="
+				+ getCollator() + "]";
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * interns strings equal according to a {@link MySqlCollator}
+ */
+public class MySqlInternPool {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	private final MySqlCollator _collator;
+
+	private final Segment[] _segments;
+	private final int _segmentShift;
+
+	public MySqlInternPool(final MySqlCollator collator) {
+		this(collator, DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * @param concurrency
+	 *            expected number of concurrently interning threads, rounded up
+	 *            to a power of 2
+	 */
+	public MySqlInternPool(final MySqlCollator collator, final int concurrency) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+		}
+		_collator = collator;
+
+		final int segments = Integer.highestOneBit(Math.min(concurrency, 1 << 16) * 2 - 1);
+		_segments = new Segment[segments];
+		for (int i = 0; i < segments; i++) {
+			_segments[i] = new Segment();
+		}
+		// segments are selected by high bits, slots by low bits of mixed hash
+		_segmentShift = 32 - Integer.numberOfTrailingZeros(segments);
+	}
+
+	/**
+	 * @return canonical instance of given value, the value itself if no equal
+	 *         value is interned, null for null
+	 * @throws UnmappableCharacterException
+	 *             depending on policy of collator
+	 */
+	public String intern(final String value) {
+		if (value == null) {
+			return null;
+		}
+		final int hash = _collator.hash(value);
+		final int mixed = mix(hash);
+		return segment(mixed).intern(_collator, value, hash, mixed);
+	}
+
+	/**
+	 * intern all values in place
+	 */
+	public void intern(final String[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = intern(values[i]);
+		}
+	}
+
+	/**
+	 * @return number of interned values not yet collected
+	 */
+	public int size() {
+		int size = 0;
+		for (final Segment segment : _segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private Segment segment(final int mixed) {
+		// shift is 32 (i.e. 0) for a single segment
+		return _segments.length == 1 ? _segments[0] : _segments[mixed >>> _segmentShift];
+	}
+
+	/**
+	 * spread hash bits as collation hashes are poorly distributed in their
+	 * lower bits for short strings
+	 */
+	private static int mix(final int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlInternPool [segments=" + _segments.length + ", collator=" + _collator + "]";
+	}
+
+	private static final class Segment {
+
+		private static final int INITIAL_SIZE = 16;
+
+		private WeakReference<String>[] _refs;
+		private int[] _hashes;
+
+		/**
+		 * slots not null, including collected values
+		 */
+		private int _used;
+
+		private Segment() {
+			init(INITIAL_SIZE);
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private void init(final int size) {
+			_refs = new WeakReference[size];
+			_hashes = new int[size];
+			_used = 0;
+		}
+
+		private synchronized String intern(final MySqlCollator collator, final String value, final int hash,
+				final int mixed) {
+			final WeakReference<String>[] refs = _refs;
+			final int mask = refs.length - 1;
+
+			int free = -1;
+			int i = mixed & mask;
+			for (;; i = (i + 1) & mask) {
+				final WeakReference<String> ref = refs[i];
+				if (ref == null) {
+					break;
+				}
+				final String interned = ref.get();
+				if (interned == null) {
+					if (free < 0) {
+						free = i;
+					}
+				} else if (_hashes[i] == hash && collator.equals(interned, value)) {
+					return interned;
+				}
+			}
+
+			if (free >= 0) {
+				refs[free] = new WeakReference<String>(value);
+				_hashes[free] = hash;
+			} else {
+				refs[i] = new WeakReference<String>(value);
+				_hashes[i] = hash;
+				if (++_used * 2 > refs.length) {
+					rehash();
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * resize to live values, dropping collected ones
+		 */
+		private void rehash() {
+			final WeakReference<String>[] refs = _refs;
+			final int[] hashes = _hashes;
+
+			int live = 0;
+			for (final WeakReference<String> ref : refs) {
+				if (ref != null && ref.get() != null) {
+					live++;
+				}
+			}
+
+			// keep load factor at or below 0.25 after resize
+			init(Math.max(INITIAL_SIZE, Integer.highestOneBit(live * 4 - 1) << 1));
+			final int mask = _refs.length - 1;
+			for (int j = 0; j < refs.length; j++) {
+				if (refs[j] != null && refs[j].get() != null) {
+					int i = mix(hashes[j]) & mask;
+					while (_refs[i] != null) {
+						i = (i + 1) & mask;
+					}
+					_refs[i] = refs[j];
+					_hashes[i] = hashes[j];
+					_used++;
+				}
+			}
+		}
+
+		private synchronized int size() {
+			int size = 0;
+			for (final WeakReference<String> ref : _refs) {
+				if (ref != null && ref.get() != null) {
+					size++;
+				}
+			}
+			return size;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * {@link Charset} using the exact character mapping of a {@link MySqlCharset}
+ * 
+ * @see MySqlCharset#asJavaCharset()
+ */
+public class MySqlJavaCharset extends Charset {
+
+	public static final String PREFIX = "mysql-";
+
+	private final MySqlCharset _charset;
+
+	public MySqlJavaCharset(final MySqlCharset charset) {
+		super(PREFIX + charset.getName(), null);
+		_charset = charset;
+	}
+
+	@Override
+	public boolean contains(final Charset cs) {
+		return cs instanceof MySqlJavaCharset && ((MySqlJavaCharset) cs)._charset == _charset;
+	}
+
+	@Override
+	public CharsetDecoder newDecoder() {
+		return new Decoder(this);
+	}
+
+	@Override
+	public CharsetEncoder newEncoder() {
+		return new Encoder(this);
+	}
+
+	public MySqlCharset getCharset() {
+		return _charset;
+	}
+
+	/**
+	 * @return true if index is mapped to a unicode character. MySQL maps
+	 *         unassigned indexes to 0x0000
+	 */
+	private static boolean isAssigned(final char c, final int index) {
+		return c != 0x0 || index == 0;
+	}
+
+	private static final class Decoder extends CharsetDecoder {
+
+		private final char[] _chars;
+
+		private Decoder(final MySqlJavaCharset charset) {
+			super(charset, 1.0f, 1.0f);
+			_chars = charset._charset.getCharacters();
+		}
+
+		@Override
+		protected CoderResult decodeLoop(final ByteBuffer in, final CharBuffer out) {
+			if (in.hasArray() && out.hasArray()) {
+				return decodeArrayLoop(in, out);
+			}
+
+			while (in.hasRemaining()) {
+				if (!out.hasRemaining()) {
+					return CoderResult.OVERFLOW;
+				}
+				final int index = in.get() & 0xFF;
+				final char c = _chars[index];
+				if (!isAssigned(c, index)) {
+					in.position(in.position() - 1);
+					return CoderResult.unmappableForLength(1);
+				}
+				out.put(c);
+			}
+			return CoderResult.UNDERFLOW;
+		}
+
+		private CoderResult decodeArrayLoop(final ByteBuffer in, final CharBuffer out) {
+			final byte[] src = in.array();
+			final int srcLimit = in.arrayOffset() + in.limit();
+			int s = in.arrayOffset() + in.position();
+
+			final char[] dst = out.array();
+			final int dstLimit = out.arrayOffset() + out.limit();
+			int d = out.arrayOffset() + out.position();
+
+			final char[] chars = _chars;
+			try {
+				final int end = s + Math.min(srcLimit - s, dstLimit - d);
+				while (s < end) {
+					final int index = src[s] & 0xFF;
+					final char c = chars[index];
+					if (!isAssigned(c, index)) {
+						return CoderResult.unmappableForLength(1);
+					}
+					dst[d++] = c;
+					s++;
+				}
+				return s < srcLimit ? CoderResult.OVERFLOW : CoderResult.UNDERFLOW;
+			} finally {
+				in.position(s - in.arrayOffset());
+				out.position(d - out.arrayOffset());
+			}
+		}
+	}
+
+	private static final class Encoder extends CharsetEncoder {
+
+		private final MySqlCharset _charset;
+
+		private Encoder(final MySqlJavaCharset charset) {
+			super(charset, 1.0f, 1.0f);
+			_charset = charset._charset;
+		}
+
+		@Override
+		public boolean canEncode(final char c) {
+			return _charset.isMappable(c);
+		}
+
+		@Override
+		protected CoderResult encodeLoop(final CharBuffer in, final ByteBuffer out) {
+			if (in.hasArray() && out.hasArray()) {
+				return encodeArrayLoop(in, out);
+			}
+
+			while (in.hasRemaining()) {
+				if (!out.hasRemaining()) {
+					return CoderResult.OVERFLOW;
+				}
+				final char c = in.get();
+				final int index = _charset.indexOf(c);
+				if (index == MySqlCharset.UNMAPPABLE) {
+					in.position(in.position() - 1);
+					return unmappable(c, in.remaining() > 1 ? in.get(in.position() + 1) : null);
+				}
+				out.put((byte) index);
+			}
+			return CoderResult.UNDERFLOW;
+		}
+
+		private CoderResult encodeArrayLoop(final CharBuffer in, final ByteBuffer out) {
+			final char[] src = in.array();
+			final int srcLimit = in.arrayOffset() + in.limit();
+			int s = in.arrayOffset() + in.position();
+
+			final byte[] dst = out.array();
+			final int dstLimit = out.arrayOffset() + out.limit();
+			int d = out.arrayOffset() + out.position();
+
+			final MySqlCharset charset = _charset;
+			try {
+				final int end = s + Math.min(srcLimit - s, dstLimit - d);
+				while (s < end) {
+					final char c = src[s];
+					final int index = charset.indexOf(c);
+					if (index == MySqlCharset.UNMAPPABLE) {
+						return unmappable(c, s + 1 < srcLimit ? src[s + 1] : null);
+					}
+					dst[d++] = (byte) index;
+					s++;
+				}
+				return s < srcLimit ? CoderResult.OVERFLOW : CoderResult.UNDERFLOW;
+			} finally {
+				in.position(s - in.arrayOffset());
+				out.position(d - out.arrayOffset());
+			}
+		}
+
+		/**
+		 * @param next
+		 *            next character, null if end of input
+		 */
+		private static CoderResult unmappable(final char c, final Character next) {
+			if (Character.isHighSurrogate(c)) {
+				if (next == null) {
+					// wait for low surrogate
+					return CoderResult.UNDERFLOW;
+				}
+				return Character.isLowSurrogate(next) ? CoderResult.unmappableForLength(2) : CoderResult
+						.malformedForLength(1);
+			}
+			if (Character.isLowSurrogate(c)) {
+				return CoderResult.malformedForLength(1);
+			}
+			return CoderResult.unmappableForLength(1);
+		}
+	}
+}
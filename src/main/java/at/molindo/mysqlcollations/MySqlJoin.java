@@ -0,0 +1,364 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * join operators matching rows by keys equal according to a
+ * {@link MySqlCollator}
+ */
+public class MySqlJoin {
+
+	/**
+	 * minimum number of rows per parallel task
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	private final MySqlCollator _collator;
+
+	public MySqlJoin(final MySqlCollator collator) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		_collator = collator;
+	}
+
+	/**
+	 * extracts the join key of a row
+	 */
+	public interface Key<T> {
+		/**
+		 * @return join key of row, null keys never match
+		 */
+		CharSequence get(T row);
+	}
+
+	/**
+	 * receives matching pairs of rows
+	 */
+	public interface Listener<L, R> {
+		void matched(L left, R right);
+	}
+
+	/**
+	 * merge join of two inputs sorted by their keys according to the collator.
+	 * Matches are reported in order, for equal keys as cross product of both
+	 * sides.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if an input isn't sorted
+	 */
+	public <L, R> void sortMergeJoin(final List<L> left, final Key<? super L> leftKey, final List<R> right,
+			final Key<? super R> rightKey, final Listener<? super L, ? super R> listener) {
+		final Cursor<L> l = new Cursor<L>(left, leftKey, "left");
+		final Cursor<R> r = new Cursor<R>(right, rightKey, "right");
+
+		while (l.hasRow() && r.hasRow()) {
+			final int cmp = _collator.compare(l._key, r._key);
+			if (cmp < 0) {
+				l.next();
+			} else if (cmp > 0) {
+				r.next();
+			} else {
+				final int lStart = l._index, rStart = r._index;
+				l.skipRun();
+				r.skipRun();
+				for (int i = lStart; i < l._runEnd; i++) {
+					final L lRow = left.get(i);
+					if (leftKey.get(lRow) == null) {
+						continue;
+					}
+					for (int j = rStart; j < r._runEnd; j++) {
+						final R rRow = right.get(j);
+						if (rightKey.get(rRow) != null) {
+							listener.matched(lRow, rRow);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * position in a sorted input, skipping rows with null keys
+	 */
+	private final class Cursor<T> {
+		private final List<T> _rows;
+		private final Key<? super T> _keyOf;
+		private final String _name;
+
+		private int _index = -1;
+		private int _runEnd;
+		private CharSequence _key;
+
+		private Cursor(final List<T> rows, final Key<? super T> key, final String name) {
+			_rows = rows;
+			_keyOf = key;
+			_name = name;
+			next();
+		}
+
+		private boolean hasRow() {
+			return _index < _rows.size();
+		}
+
+		/**
+		 * move to next row with a key, checking order
+		 */
+		private void next() {
+			final CharSequence previous = _key;
+			do {
+				_index++;
+			} while (_index < _rows.size() && (_key = _keyOf.get(_rows.get(_index))) == null);
+
+			if (_index < _rows.size() && previous != null && _collator.compare(previous, _key) > 0) {
+				throw new IllegalArgumentException(_name + " input not sorted at index " + _index);
+			}
+		}
+
+		/**
+		 * move to first row after run of rows with current key, run might
+		 * contain rows with null keys
+		 */
+		private void skipRun() {
+			final CharSequence key = _key;
+			do {
+				next();
+			} while (hasRow() && _collator.compare(key, _key) == 0);
+			_runEnd = _index;
+		}
+	}
+
+	/**
+	 * partitioned hash join, building hash tables of the build side and
+	 * probing them with rows of the probe side in parallel. Matches are
+	 * reported concurrently from executor threads in no particular order.
+	 * 
+	 * @param partitions
+	 *            number of partitions built in parallel, rounded up to a power
+	 *            of 2
+	 * @param listener
+	 *            thread-safe listener
+	 */
+	public <B, P> void hashJoin(final List<B> build, final Key<? super B> buildKey, final List<P> probe,
+			final Key<? super P> probeKey, final Listener<? super B, ? super P> listener, final int partitions,
+			final ExecutorService executor) throws InterruptedException {
+		final int partitionCount = Integer.highestOneBit(Math.max(partitions, 1) * 2 - 1);
+		final HashTable<B> table = new HashTable<B>(build, buildKey, partitionCount, executor);
+
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int from = 0; from < probe.size(); from += CHUNK_SIZE) {
+			final int start = from;
+			final int end = Math.min(from + CHUNK_SIZE, probe.size());
+			tasks.add(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					for (int i = start; i < end; i++) {
+						final P row = probe.get(i);
+						final CharSequence key = probeKey.get(row);
+						if (key != null) {
+							table.probe(key, row, listener);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(executor, tasks);
+	}
+
+	private static void invokeAll(final ExecutorService executor, final List<Callable<Void>> tasks)
+			throws InterruptedException {
+		try {
+			for (final Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("join failed", e.getCause());
+		}
+	}
+
+	/**
+	 * spread hash bits as collation hashes are poorly distributed in their
+	 * lower bits for short strings
+	 */
+	private static int mix(final int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * hash tables of build rows, one open addressing table per partition
+	 * holding the first row of each key, further rows of equal keys are
+	 * chained
+	 */
+	private final class HashTable<B> {
+		private final List<B> _rows;
+		private final Key<? super B> _key;
+
+		private final int[] _hashes;
+
+		/**
+		 * next row with equal key + 1, 0 for end of chain
+		 */
+		private final int[] _next;
+
+		/**
+		 * first row of key + 1 for each slot, 0 for empty slots
+		 */
+		private final int[][] _slots;
+
+		private final int _partitionMask;
+
+		private HashTable(final List<B> rows, final Key<? super B> key, final int partitions,
+				final ExecutorService executor) throws InterruptedException {
+			_rows = rows;
+			_key = key;
+			_hashes = new int[rows.size()];
+			_next = new int[rows.size()];
+			_slots = new int[partitions][];
+			_partitionMask = partitions - 1;
+
+			// hash keys in parallel, rows with null keys get no partition
+			final int[] partitionOf = new int[rows.size()];
+			final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int from = 0; from < rows.size(); from += CHUNK_SIZE) {
+				final int start = from;
+				final int end = Math.min(from + CHUNK_SIZE, rows.size());
+				tasks.add(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						for (int i = start; i < end; i++) {
+							final CharSequence k = _key.get(_rows.get(i));
+							if (k == null) {
+								partitionOf[i] = -1;
+							} else {
+								_hashes[i] = _collator.hash(k);
+								partitionOf[i] = partition(_hashes[i]);
+							}
+						}
+						return null;
+					}
+				});
+			}
+			invokeAll(executor, tasks);
+
+			// collect rows of each partition
+			final int[] counts = new int[partitions];
+			for (final int p : partitionOf) {
+				if (p >= 0) {
+					counts[p]++;
+				}
+			}
+			final int[][] partitionRows = new int[partitions][];
+			for (int p = 0; p < partitions; p++) {
+				partitionRows[p] = new int[counts[p]];
+				counts[p] = 0;
+			}
+			for (int i = 0; i < partitionOf.length; i++) {
+				final int p = partitionOf[i];
+				if (p >= 0) {
+					partitionRows[p][counts[p]++] = i;
+				}
+			}
+
+			// build tables of partitions in parallel
+			tasks.clear();
+			for (int p = 0; p < partitions; p++) {
+				final int partition = p;
+				tasks.add(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						buildPartition(partition, partitionRows[partition]);
+						return null;
+					}
+				});
+			}
+			invokeAll(executor, tasks);
+		}
+
+		private int partition(final int hash) {
+			// mixed differently than slots, hence independent of slot bits
+			return Integer.rotateLeft(hash * 0x85EBCA6B, 13) & _partitionMask;
+		}
+
+		private void buildPartition(final int partition, final int[] rows) {
+			final int size = Integer.highestOneBit(Math.max(rows.length, 1) * 2 - 1) << 1;
+			final int[] slots = new int[size];
+			final int mask = size - 1;
+
+			// insert in reverse order, hence chains keep input order
+			for (int r = rows.length - 1; r >= 0; r--) {
+				final int row = rows[r];
+				final int hash = _hashes[row];
+				final CharSequence key = _key.get(_rows.get(row));
+				for (int i = mix(hash) & mask;; i = (i + 1) & mask) {
+					final int head = slots[i] - 1;
+					if (head < 0) {
+						slots[i] = row + 1;
+						break;
+					}
+					if (_hashes[head] == hash && _collator.equals(_key.get(_rows.get(head)), key)) {
+						_next[row] = head + 1;
+						slots[i] = row + 1;
+						break;
+					}
+				}
+			}
+			_slots[partition] = slots;
+		}
+
+		private <P> void probe(final CharSequence key, final P probe, final Listener<? super B, ? super P> listener) {
+			final int hash = _collator.hash(key);
+			final int[] slots = _slots[partition(hash)];
+			final int mask = slots.length - 1;
+			for (int i = mix(hash) & mask;; i = (i + 1) & mask) {
+				int row = slots[i] - 1;
+				if (row < 0) {
+					return;
+				}
+				if (_hashes[row] == hash && _collator.equals(_key.get(_rows.get(row)), key)) {
+					for (; row >= 0; row = _next[row] - 1) {
+						listener.matched(_rows.get(row), probe);
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlJoin [collator=" + _collator + "]";
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LIKE pattern compiled to weights of a {@link MySqlCollator}
+ * 
+ * @see MySqlCollator#compileLike(String, char)
+ */
+public final class MySqlLikeMatcher {
+
+	/**
+	 * pattern weight for '_', matching any single character
+	 */
+	private static final int ANY = -2;
+
+	private final MySqlCollator _collator;
+	private final String _pattern;
+
+	/**
+	 * pattern weights between '%' wildcards, first segment is anchored at
+	 * start, last segment anchored at end
+	 */
+	private final int[][] _segments;
+
+	/**
+	 * pattern contains at least one '%'
+	 */
+	private final boolean _wildcard;
+
+	MySqlLikeMatcher(final MySqlCollator collator, final String pattern, final char escape) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		if (pattern == null) {
+			throw new NullPointerException("pattern");
+		}
+		_collator = collator;
+		_pattern = pattern;
+
+		final List<int[]> segments = new ArrayList<int[]>();
+		final int[] segment = new int[pattern.length()];
+		int length = 0;
+		boolean wildcard = false;
+
+		for (int i = 0; i < pattern.length(); i++) {
+			final char c = pattern.charAt(i);
+			if (c == escape && i + 1 < pattern.length()) {
+				length = append(segment, length, pattern.charAt(++i));
+			} else if (c == '%') {
+				if (length > 0 || segments.isEmpty()) {
+					segments.add(Arrays.copyOf(segment, length));
+				}
+				length = 0;
+				wildcard = true;
+			} else if (c == '_') {
+				segment[length++] = ANY;
+			} else {
+				length = append(segment, length, c);
+			}
+		}
+		segments.add(Arrays.copyOf(segment, length));
+
+		_segments = segments.toArray(new int[segments.size()][]);
+		_wildcard = wildcard;
+	}
+
+	/**
+	 * append weight of given pattern character unless skipped
+	 * 
+	 * @return new length of segment
+	 */
+	private int append(final int[] segment, final int length, final char c) {
+		final int weight = _collator.weightOf(c);
+		if (weight < 0) {
+			return length;
+		}
+		segment[length] = weight;
+		return length + 1;
+	}
+
+	/**
+	 * @return true if string matches this pattern, treating unmappable
+	 *         characters like the collator's {@link UnmappableCharacterPolicy}
+	 * @throws UnmappableCharacterException
+	 *             if a character compared to the pattern is unmappable using
+	 *             {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	public boolean matches(final String string) {
+		return matchesSkipped(_collator.skipUnmappable(string));
+	}
+
+	private boolean matchesSkipped(final CharSequence string) {
+		final int[][] segments = _segments;
+		final int[] first = segments[0];
+
+		if (!_wildcard) {
+			return string.length() == first.length && matchesAt(string, 0, first);
+		}
+
+		final int[] last = segments[segments.length - 1];
+		final int end = string.length() - last.length;
+		if (end < first.length || !matchesAt(string, 0, first) || !matchesAt(string, end, last)) {
+			return false;
+		}
+
+		int pos = first.length;
+		for (int s = 1; s < segments.length - 1; s++) {
+			final int[] segment = segments[s];
+			final int limit = end - segment.length;
+			while (pos <= limit && !matchesAt(string, pos, segment)) {
+				pos++;
+			}
+			if (pos > limit) {
+				return false;
+			}
+			pos += segment.length;
+		}
+		return true;
+	}
+
+	private boolean matchesAt(final CharSequence string, final int offset, final int[] segment) {
+		for (int i = 0; i < segment.length; i++) {
+			final int weight = segment[i];
+			if (weight != ANY && weight != _collator.weightOf(string.charAt(offset + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	public MySqlCollation getCollation() {
+		return _collator.getCollation();
+	}
+
+	public String getPattern() {
+		return _pattern;
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlLikeMatcher [pattern=" + _pattern + ", collation=" + getCollation().getName() + "]";
+	}
+
+}
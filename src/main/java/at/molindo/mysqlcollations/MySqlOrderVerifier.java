@@ -0,0 +1,321 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * verifies the ordering of a {@link MySqlCollator} against a known ordering
+ */
+public class MySqlOrderVerifier {
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private final MySqlCollator _collator;
+
+	public MySqlOrderVerifier(final MySqlCollator collator) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		_collator = collator;
+	}
+
+	/**
+	 * @param values
+	 *            values in expected order
+	 * @param ranks
+	 *            dense rank of each value, equal values have equal ranks
+	 * @param maxMismatches
+	 *            maximum number of mismatches to report
+	 * @param executor
+	 *            executor used to verify chunks of values in parallel
+	 * @return first mismatches in order of values, empty if ordering matches
+	 */
+	public List<Mismatch> verify(final List<String> values, final int[] ranks, final int maxMismatches,
+			final ExecutorService executor) throws InterruptedException {
+		if (values.size() != ranks.length) {
+			throw new IllegalArgumentException("got " + values.size() + " values but " + ranks.length + " ranks");
+		}
+
+		final List<Future<List<Mismatch>>> futures = new ArrayList<Future<List<Mismatch>>>();
+		for (int from = 0; from < values.size() - 1; from += CHUNK_SIZE) {
+			final int start = from;
+			final int end = Math.min(from + CHUNK_SIZE, values.size() - 1);
+			futures.add(executor.submit(new Callable<List<Mismatch>>() {
+
+				@Override
+				public List<Mismatch> call() {
+					return verifyPairs(values, ranks, start, end, maxMismatches);
+				}
+			}));
+		}
+
+		final List<Mismatch> mismatches = new ArrayList<Mismatch>();
+		try {
+			for (final Future<List<Mismatch>> future : futures) {
+				mismatches.addAll(future.get());
+			}
+		} catch (final ExecutionException e) {
+			throw new RuntimeException("verification failed", e.getCause());
+		}
+
+		if (mismatches.isEmpty()) {
+			verifySort(values, ranks, maxMismatches, mismatches);
+		}
+		return mismatches.size() > maxMismatches ? mismatches.subList(0, maxMismatches) : mismatches;
+	}
+
+	/**
+	 * verify pairs starting at from (inclusive) to end (exclusive)
+	 */
+	private List<Mismatch> verifyPairs(final List<String> values, final int[] ranks, final int from, final int end,
+			final int maxMismatches) {
+		final List<Mismatch> mismatches = new ArrayList<Mismatch>();
+		MySqlCollationKey key = _collator.getCollationKey(values.get(from));
+		for (int i = from; i < end && mismatches.size() < maxMismatches; i++) {
+			final String source = values.get(i);
+			final String target = values.get(i + 1);
+			final int expected = Integer.signum(ranks[i] - ranks[i + 1]);
+			if (expected > 0) {
+				throw new IllegalArgumentException("ranks not in ascending order at index " + i);
+			}
+
+			final MySqlCollationKey next = _collator.getCollationKey(target);
+			check(mismatches, Method.COMPARE, i, source, target, expected, _collator.compare(source, target));
+			check(mismatches, Method.CHAR_SEQUENCE, i, source, target, expected, _collator.compare(
+					new StringBuilder(source), new StringBuilder(target)));
+			check(mismatches, Method.COLLATION_KEY, i, source, target, expected, key.compareTo(next));
+			key = next;
+		}
+		return mismatches;
+	}
+
+	private static void check(final List<Mismatch> mismatches, final Method method, final int index,
+			final String source, final String target, final int expected, final int actual) {
+		if (Integer.signum(actual) != expected) {
+			mismatches.add(new Mismatch(method, index, source, target, expected, Integer.signum(actual)));
+		}
+	}
+
+	private void verifySort(final List<String> values, final int[] ranks, final int maxMismatches,
+			final List<Mismatch> mismatches) {
+		final String[] sorted = values.toArray(new String[values.size()]);
+		// reverse to force actual sorting
+		Collections.reverse(Arrays.asList(sorted));
+		_collator.sort(sorted);
+
+		for (int i = 0; i < sorted.length && mismatches.size() < maxMismatches; i++) {
+			// stable sort of equal values reversed them, compare ranks only
+			if (!_collator.equals(sorted[i], values.get(i))) {
+				mismatches.add(new Mismatch(Method.SORT, i, sorted[i], values.get(i), 0, 1));
+			}
+		}
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	/**
+	 * @return dense ranks of given values according to comparator, values are
+	 *         sorted in place
+	 */
+	public static int[] rank(final List<String> values, final Comparator<String> comparator) {
+		Collections.sort(values, comparator);
+		final int[] ranks = new int[values.size()];
+		for (int i = 1; i < ranks.length; i++) {
+			ranks[i] = ranks[i - 1] + (comparator.compare(values.get(i - 1), values.get(i)) == 0 ? 0 : 1);
+		}
+		return ranks;
+	}
+
+	/**
+	 * read golden ordering as written by MySQL's SELECT ... INTO OUTFILE with
+	 * default options, i.e. tab separated rank and value, backslash escapes and
+	 * one row per line, e.g.
+	 * 
+	 * <pre>
+	 * SELECT DENSE_RANK() OVER (ORDER BY s), s FROM t ORDER BY s
+	 *   INTO OUTFILE 'latin1_german1_ci.txt'
+	 * </pre>
+	 * 
+	 * @param charset
+	 *            charset of file, usually the charset of the exported column
+	 */
+	public static Golden read(final InputStream in, final Charset charset) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset));
+		final List<String> values = new ArrayList<String>();
+		int[] ranks = new int[1024];
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.length() == 0) {
+				continue;
+			}
+			final int tab = line.indexOf('\t');
+			if (tab < 0) {
+				throw new IOException("missing tab in line " + (values.size() + 1));
+			}
+			if (values.size() == ranks.length) {
+				ranks = Arrays.copyOf(ranks, ranks.length * 2);
+			}
+			try {
+				ranks[values.size()] = Integer.parseInt(line.substring(0, tab));
+			} catch (final NumberFormatException e) {
+				throw new IOException("invalid rank in line " + (values.size() + 1));
+			}
+			values.add(unescape(line, tab + 1));
+		}
+		return new Golden(values, Arrays.copyOf(ranks, values.size()));
+	}
+
+	private static String unescape(final String line, final int from) {
+		if (line.indexOf('\\', from) < 0) {
+			return line.substring(from);
+		}
+		final StringBuilder buf = new StringBuilder(line.length() - from);
+		for (int i = from; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length()) {
+				c = line.charAt(++i);
+				switch (c) {
+				case '0':
+					c = '\0';
+					break;
+				case 'n':
+					c = '\n';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 'b':
+					c = '\b';
+					break;
+				case 'Z':
+					c = '\u001A';
+					break;
+				default:
+					// escaped \ or literal character
+				}
+			}
+			buf.append(c);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * checked method of collator
+	 */
+	public enum Method {
+		COMPARE, CHAR_SEQUENCE, COLLATION_KEY, SORT;
+	}
+
+	/**
+	 * golden ordering of values
+	 */
+	public static final class Golden {
+		private final List<String> _values;
+		private final int[] _ranks;
+
+		private Golden(final List<String> values, final int[] ranks) {
+			_values = values;
+			_ranks = ranks;
+		}
+
+		public List<String> getValues() {
+			return _values;
+		}
+
+		public int[] getRanks() {
+			return _ranks;
+		}
+	}
+
+	/**
+	 * mismatch of a pair of adjacent values
+	 */
+	public static final class Mismatch {
+		private final Method _method;
+		private final int _index;
+		private final String _source;
+		private final String _target;
+		private final int _expected;
+		private final int _actual;
+
+		private Mismatch(final Method method, final int index, final String source, final String target,
+				final int expected, final int actual) {
+			_method = method;
+			_index = index;
+			_source = source;
+			_target = target;
+			_expected = expected;
+			_actual = actual;
+		}
+
+		public Method getMethod() {
+			return _method;
+		}
+
+		public int getIndex() {
+			return _index;
+		}
+
+		public String getSource() {
+			return _source;
+		}
+
+		public String getTarget() {
+			return _target;
+		}
+
+		/**
+		 * @return expected signum of comparison
+		 */
+		public int getExpected() {
+			return _expected;
+		}
+
+		/**
+		 * @return actual signum of comparison
+		 */
+		public int getActual() {
+			return _actual;
+		}
+
+		@Override
+		public String toString() {
+			return _method + " at " + _index + ": '" + _source + "' vs '" + _target + "' expected " + _expected
+					+ " but was " + _actual;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.Arrays;
+
+/**
+ * substring search for a fixed needle in weight space of a
+ * {@link MySqlCollator}
+ * 
+ * @see MySqlCollator#compileSearch(String)
+ */
+public final class MySqlStringSearcher {
+
+	private final MySqlCollator _collator;
+	private final String _needle;
+
+	/**
+	 * unsigned needle weights
+	 */
+	private final int[] _weights;
+
+	/**
+	 * distance to shift for weight of last character in current window
+	 */
+	private final int[] _shifts;
+
+	MySqlStringSearcher(final MySqlCollator collator, final String needle) {
+		if (collator == null) {
+			throw new NullPointerException("collator");
+		}
+		if (needle == null) {
+			throw new NullPointerException("needle");
+		}
+		_collator = collator;
+		_needle = needle;
+
+		final CharSequence weighted = collator.skipUnmappable(needle);
+		final int m = weighted.length();
+		_weights = new int[m];
+		for (int i = 0; i < m; i++) {
+			_weights[i] = collator.weightOf(weighted.charAt(i));
+		}
+
+		_shifts = new int[MySqlCharset.MAX_CHARACTERS];
+		Arrays.fill(_shifts, Math.max(m, 1));
+		for (int i = 0; i < m - 1; i++) {
+			_shifts[_weights[i]] = m - 1 - i;
+		}
+	}
+
+	/**
+	 * @return index of first occurrence of needle in string or -1 if not found
+	 */
+	public int indexOf(final CharSequence string) {
+		return indexOf(string, 0);
+	}
+
+	/**
+	 * @return index of first occurrence of needle in string starting at
+	 *         fromIndex or -1 if not found, treating unmappable characters like
+	 *         the collator's {@link UnmappableCharacterPolicy}
+	 * @throws UnmappableCharacterException
+	 *             if a character compared to the needle is unmappable using
+	 *             {@link UnmappableCharacterPolicy#FAIL}
+	 */
+	public int indexOf(final CharSequence string, final int fromIndex) {
+		final int from = Math.max(fromIndex, 0);
+		if (_weights.length == 0) {
+			return from <= string.length() ? from : -1;
+		}
+		if (_collator.getUnmappablePolicy() != UnmappableCharacterPolicy.SKIP || from >= string.length()) {
+			return search(string, from);
+		}
+
+		final CharSequence rest = from == 0 ? string : string.subSequence(from, string.length());
+		final CharSequence skipped = _collator.skipUnmappable(rest);
+		if (skipped == rest) {
+			return search(string, from);
+		}
+
+		// search without skipped characters, mapping index back to string
+		int remaining = search(skipped, 0);
+		if (remaining < 0) {
+			return -1;
+		}
+		final MySqlCharset charset = getCollation().getCharset();
+		for (int i = from;; i++) {
+			if (charset.indexOf(string.charAt(i)) != MySqlCharset.UNMAPPABLE && remaining-- == 0) {
+				return i;
+			}
+		}
+	}
+
+	private int search(final CharSequence string, final int from) {
+		final int[] weights = _weights;
+		final int m = weights.length;
+		final int end = string.length() - m;
+
+		final int last = m - 1;
+		int i = from;
+		while (i <= end) {
+			final int w = _collator.weightOf(string.charAt(i + last));
+			int j = last;
+			int v = w;
+			while (v == weights[j]) {
+				if (j == 0) {
+					return i;
+				}
+				v = _collator.weightOf(string.charAt(i + --j));
+			}
+			i += _shifts[w];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index of first occurrence of needle in bytes encoded using this
+	 *         charset between offset and offset + length or -1 if not found
+	 */
+	public int indexOf(final byte[] bytes, final int offset, final int length) {
+		if (offset < 0 || length < 0 || length > bytes.length - offset) {
+			throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", bytes.length="
+					+ bytes.length);
+		}
+
+		final int[] weights = _weights;
+		final int m = weights.length;
+		final int end = offset + length - m;
+
+		if (m == 0) {
+			return offset;
+		}
+
+		final int last = m - 1;
+		int i = offset;
+		while (i <= end) {
+			final int w = getCollation().weightOfIndex(bytes[i + last] & 0xFF);
+			int j = last;
+			int v = w;
+			while (v == weights[j]) {
+				if (j == 0) {
+					return i;
+				}
+				v = getCollation().weightOfIndex(bytes[i + --j] & 0xFF);
+			}
+			i += _shifts[w];
+		}
+		return -1;
+	}
+
+	/**
+	 * same as MySQL's INSTR(string, needle) or LOCATE(needle, string)
+	 * 
+	 * @return 1-based position of first occurrence of needle in string or 0 if
+	 *         not found
+	 */
+	public int locate(final CharSequence string) {
+		return locate(string, 1);
+	}
+
+	/**
+	 * same as MySQL's LOCATE(needle, string, pos)
+	 * 
+	 * @return 1-based position of first occurrence of needle in string
+	 *         starting at 1-based pos or 0 if not found
+	 */
+	public int locate(final CharSequence string, final int pos) {
+		if (pos < 1) {
+			return 0;
+		}
+		return indexOf(string, pos - 1) + 1;
+	}
+
+	public MySqlCollator getCollator() {
+		return _collator;
+	}
+
+	public MySqlCollation getCollation() {
+		return _collator.getCollation();
+	}
+
+	public String getNeedle() {
+		return _needle;
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlStringSearcher [needle=" + _needle + ", collation=" + getCollation().getName() + "]";
+	}
+
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * min/max statistics of a block of string values in collation order
+ */
+public final class MySqlZoneMap extends CollatedSketch {
+
+	private static final int MAGIC = 0x4D595A4D; // MYZM
+
+	public static final int DEFAULT_PREFIX_LENGTH = 16;
+	public static final int DEFAULT_PRECISION = 8;
+
+	private static final int MAX_PREFIX_LENGTH = 255;
+
+	private final int _prefixLength;
+
+	private long _count;
+	private long _nulls;
+
+	/**
+	 * weights of minimum and maximum truncated to prefix length, null if
+	 * there are no values
+	 */
+	private byte[] _min;
+	private byte[] _max;
+
+	/**
+	 * maximum value may be longer than {@link #_max}
+	 */
+	private boolean _maxTruncated;
+
+	private final MySqlHyperLogLog _distinct;
+
+	/**
+	 * buffer for weights of added values
+	 */
+	private byte[] _weights;
+
+	public MySqlZoneMap(final MySqlCollator collator) {
+		this(collator, DEFAULT_PREFIX_LENGTH, DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param prefixLength
+	 *            maximum number of weights kept for min and max
+	 * @param precision
+	 *            precision of distinct estimate, see
+	 *            {@link MySqlHyperLogLog#MySqlHyperLogLog(MySqlCollator, int)}
+	 */
+	public MySqlZoneMap(final MySqlCollator collator, final int prefixLength, final int precision) {
+		this(collator, checkPrefixLength(prefixLength), new MySqlHyperLogLog(collator, precision));
+	}
+
+	private MySqlZoneMap(final MySqlCollator collator, final int prefixLength, final MySqlHyperLogLog distinct) {
+		super(collator);
+		_prefixLength = prefixLength;
+		_distinct = distinct;
+		_weights = new byte[prefixLength];
+	}
+
+	private static int checkPrefixLength(final int prefixLength) {
+		if (prefixLength < 1 || prefixLength > MAX_PREFIX_LENGTH) {
+			throw new IllegalArgumentException("prefix length must be between 1 and " + MAX_PREFIX_LENGTH + ": "
+					+ prefixLength);
+		}
+		return prefixLength;
+	}
+
+	/**
+	 * @param value
+	 *            value or null for NULL
+	 * @throws UnmappableCharacterException
+	 *             depending on policy of collator
+	 */
+	public void add(final CharSequence value) {
+		_count++;
+		if (value == null) {
+			_nulls++;
+			return;
+		}
+		if (_weights.length < value.length()) {
+			_weights = new byte[Math.max(value.length(), _weights.length * 2)];
+		}
+		final int length = getCollator().weights(value, _weights);
+		final int prefix = Math.min(length, _prefixLength);
+		update(_weights, prefix, length > _prefixLength);
+		_distinct.add(value);
+	}
+
+	private void update(final byte[] weights, final int length, final boolean truncated) {
+		if (_min == null) {
+			_min = Arrays.copyOf(weights, length);
+			_max = _min;
+			_maxTruncated = truncated;
+			return;
+		}
+		if (compare(weights, length, _min, _min.length) < 0) {
+			_min = Arrays.copyOf(weights, length);
+		}
+		final int cmp = compare(weights, length, _max, _max.length);
+		if (cmp > 0) {
+			_max = Arrays.copyOf(weights, length);
+			_maxTruncated = truncated;
+		} else if (cmp == 0) {
+			_maxTruncated |= truncated;
+		}
+	}
+
+	/**
+	 * add all values of other zone map to this zone map
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if zone maps use different collators, prefix lengths or
+	 *             precisions
+	 */
+	public void merge(final MySqlZoneMap other) {
+		checkCompatible(other);
+		if (other._prefixLength != _prefixLength) {
+			throw new IllegalArgumentException("can't merge zone maps of different prefix length");
+		}
+		_distinct.merge(other._distinct);
+		_count += other._count;
+		_nulls += other._nulls;
+		if (other._min != null) {
+			update(other._min, other._min.length, false);
+			update(other._max, other._max.length, other._maxTruncated);
+		}
+	}
+
+	/**
+	 * @return false if no value of this block can be equal to given value
+	 */
+	public boolean mayContain(final String value) {
+		return mayContain(value, value);
+	}
+
+	/**
+	 * @param lower
+	 *            inclusive lower bound, null if unbounded
+	 * @param upper
+	 *            inclusive upper bound, null if unbounded
+	 * @return false if no value of this block can be within given range, i.e.
+	 *         the block may be skipped for BETWEEN lower AND upper
+	 */
+	public boolean mayContain(final String lower, final String upper) {
+		if (_min == null) {
+			return false;
+		}
+		if (upper != null) {
+			final byte[] weights = weights(upper);
+			if (compare(_min, _min.length, weights, weights.length) > 0) {
+				return false;
+			}
+		}
+		if (lower != null) {
+			final byte[] weights = weights(lower);
+			final int cmp = compare(_max, _max.length, weights, weights.length);
+			// a truncated maximum may be followed by any weights
+			if (cmp < 0 && !(_maxTruncated && startsWith(weights, _max))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte[] weights(final String value) {
+		final byte[] weights = new byte[value.length()];
+		final int length = getCollator().weights(value, weights);
+		return length == weights.length ? weights : Arrays.copyOf(weights, length);
+	}
+
+	/**
+	 * unsigned lexicographic comparison of weights, shorter first
+	 */
+	private static int compare(final byte[] a, final int aLength, final byte[] b, final int bLength) {
+		final int min = Math.min(aLength, bLength);
+		for (int i = 0; i < min; i++) {
+			if (a[i] != b[i]) {
+				return (a[i] & 0xFF) - (b[i] & 0xFF);
+			}
+		}
+		return aLength - bLength;
+	}
+
+	private static boolean startsWith(final byte[] weights, final byte[] prefix) {
+		if (weights.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (weights[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if this block contains NULL values
+	 */
+	public boolean hasNulls() {
+		return _nulls > 0;
+	}
+
+	/**
+	 * @return number of values including NULLs
+	 */
+	public long getCount() {
+		return _count;
+	}
+
+	public long getNullCount() {
+		return _nulls;
+	}
+
+	/**
+	 * @return estimated number of distinct non-NULL values
+	 */
+	public long getDistinctEstimate() {
+		return _distinct.estimate();
+	}
+
+	/**
+	 * @return truncated weights of minimum value, null if there are no values
+	 */
+	public MySqlCollationKey getMin() {
+		return _min == null ? null : new MySqlCollationKey(_min.clone());
+	}
+
+	/**
+	 * @return truncated weights of maximum value, null if there are no values
+	 */
+	public MySqlCollationKey getMax() {
+		return _max == null ? null : new MySqlCollationKey(_max.clone());
+	}
+
+	public int getPrefixLength() {
+		return _prefixLength;
+	}
+
+	@Override
+	public void writeTo(final DataOutput out) throws IOException {
+		writeHeader(out, MAGIC);
+		out.writeByte(_prefixLength);
+		out.writeLong(_count);
+		out.writeLong(_nulls);
+		if (_min != null) {
+			out.writeBoolean(true);
+			out.writeByte(_min.length);
+			out.write(_min);
+			out.writeByte(_max.length);
+			out.write(_max);
+			out.writeBoolean(_maxTruncated);
+		} else {
+			out.writeBoolean(false);
+		}
+		_distinct.writeTo(out);
+	}
+
+	/**
+	 * @return zone map read from stream written by {@link #writeTo(DataOutput)}
+	 * @throws IllegalArgumentException
+	 *             if zone map was written using another collation or policy
+	 */
+	public static MySqlZoneMap readFrom(final DataInput in, final MySqlCollator collator) throws IOException {
+		readHeader(in, MAGIC, collator);
+		final int prefixLength = in.readUnsignedByte();
+		if (prefixLength < 1) {
+			throw new IOException("invalid prefix length: " + prefixLength);
+		}
+		final long count = in.readLong();
+		final long nulls = in.readLong();
+		byte[] min = null, max = null;
+		boolean maxTruncated = false;
+		if (in.readBoolean()) {
+			min = readWeights(in, prefixLength);
+			max = readWeights(in, prefixLength);
+			maxTruncated = in.readBoolean();
+		}
+		final MySqlZoneMap zoneMap = new MySqlZoneMap(collator, prefixLength, MySqlHyperLogLog.readFrom(in, collator));
+		zoneMap._count = count;
+		zoneMap._nulls = nulls;
+		zoneMap._min = min;
+		zoneMap._max = max;
+		zoneMap._maxTruncated = maxTruncated;
+		return zoneMap;
+	}
+
+	private static byte[] readWeights(final DataInput in, final int prefixLength) throws IOException {
+		final int length = in.readUnsignedByte();
+		if (length > prefixLength) {
+			throw new IOException("weights exceed prefix length: " + length);
+		}
+		final byte[] weights = new byte[length];
+		in.readFully(weights);
+		return weights;
+	}
+
+	/**
+	 * @return zone map from bytes returned by {@link #toByteArray()}
+	 */
+	public static MySqlZoneMap fromByteArray(final byte[] bytes, final MySqlCollator collator) throws IOException {
+		return readFrom(toDataInput(bytes), collator);
+	}
+
+	@Override
+	public String toString() {
+		return "MySqlZoneMap [count=" + _count + ", nulls=" + _nulls + ", min=" + getMin() + ", max=" + getMax()
+				+ ", collator=" + getCollator() + "]";
+	}
+}
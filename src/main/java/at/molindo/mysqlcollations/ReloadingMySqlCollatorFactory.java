@@ -0,0 +1,282 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.xml.sax.SAXException;
+
+/**
+ * keeps a {@link MySqlCollatorFactory} in sync with a MySQL charset directory
+ */
+public class ReloadingMySqlCollatorFactory {
+
+	private final File _dir;
+	private final MySqlCollatorMetrics _metrics;
+
+	/**
+	 * parsed charset files, guarded by this
+	 */
+	private Map<File, CharsetFile> _files = new HashMap<File, CharsetFile>();
+
+	private volatile Snapshot _snapshot;
+	private volatile Exception _lastFailure;
+
+	private ScheduledExecutorService _executor;
+
+	/**
+	 * @throws IOException
+	 *             if initial parsing fails
+	 */
+	public ReloadingMySqlCollatorFactory(final File dir) throws IOException, SAXException {
+		this(dir, null);
+	}
+
+	/**
+	 * @param metrics
+	 *            optional listener for parse duration of each file
+	 * @throws IOException
+	 *             if initial parsing fails
+	 */
+	public ReloadingMySqlCollatorFactory(final File dir, final MySqlCollatorMetrics metrics) throws IOException,
+			SAXException {
+		if (!dir.isDirectory()) {
+			throw new IllegalArgumentException("not a directory = " + dir);
+		}
+		_dir = dir;
+		_metrics = metrics;
+		_snapshot = new Snapshot(0, load(), 0);
+	}
+
+	/**
+	 * parse new or modified charset files of directory and swap in a new
+	 * factory if anything changed
+	 * 
+	 * @return true if charsets changed
+	 * @throws IOException
+	 *             if parsing fails, current factory is kept
+	 */
+	public synchronized boolean reload() throws IOException, SAXException {
+		final Map<String, MySqlCharset> charsets = load();
+		if (charsets == null) {
+			return false;
+		}
+		final long generation = _snapshot.getGeneration() + 1;
+		_snapshot = new Snapshot(generation, charsets, System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * @return all charsets of directory or null if no file changed since last
+	 *         load
+	 */
+	private synchronized Map<String, MySqlCharset> load() throws IOException, SAXException {
+		final File[] files = MySqlCollatorFactory.listCharsetFiles(_dir);
+		final Map<File, CharsetFile> loaded = new HashMap<File, CharsetFile>(files.length * 2);
+
+		boolean changed = files.length != _files.size();
+		for (final File file : files) {
+			// read before parsing, a concurrent change is picked up next time
+			final long lastModified = file.lastModified();
+			final byte[] bytes = read(file);
+			final long checksum = checksum(bytes);
+
+			CharsetFile charsetFile = _files.get(file);
+			// mtime granularity might hide a change of same length
+			if (charsetFile == null || charsetFile._lastModified != lastModified
+					|| charsetFile._length != bytes.length || charsetFile._checksum != checksum) {
+				charsetFile = new CharsetFile(lastModified, bytes.length, checksum, MySqlCollatorFactory.parseCharsets(
+						file.getPath(), new ByteArrayInputStream(bytes), _metrics));
+				changed = true;
+			}
+			loaded.put(file, charsetFile);
+		}
+
+		if (!changed && _snapshot != null) {
+			return null;
+		}
+		_files = loaded;
+
+		final Map<String, MySqlCharset> charsets = new HashMap<String, MySqlCharset>();
+		for (final File file : files) {
+			// later files override charsets of earlier files
+			charsets.putAll(loaded.get(file)._charsets);
+		}
+		return charsets;
+	}
+
+	private static byte[] read(final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+			final byte[] buf = new byte[8192];
+			int read;
+			while ((read = in.read(buf)) != -1) {
+				out.write(buf, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static long checksum(final byte[] bytes) {
+		final CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+
+	/**
+	 * reload directory periodically using a daemon thread, failures are
+	 * available from {@link #getLastFailure()}
+	 */
+	public synchronized void start(final long period, final TimeUnit unit) {
+		if (_executor != null) {
+			throw new IllegalStateException("already started");
+		}
+		_executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "mysql-charset-reloader " + _dir);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		_executor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					reload();
+					_lastFailure = null;
+				} catch (final Exception e) {
+					// keep polling, file might be in the middle of an update
+					_lastFailure = e;
+				}
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * stop periodic reloading
+	 */
+	public synchronized void stop() {
+		if (_executor != null) {
+			_executor.shutdownNow();
+			_executor = null;
+		}
+	}
+
+	/**
+	 * @return current factory, never changes once returned
+	 */
+	public MySqlCollatorFactory getFactory() {
+		return _snapshot.getFactory();
+	}
+
+	/**
+	 * @return number of changes since creation
+	 */
+	public long getGeneration() {
+		return _snapshot.getGeneration();
+	}
+
+	/**
+	 * @return time of last change in millis or 0 if never changed
+	 */
+	public long getLastChange() {
+		return _snapshot.getTime();
+	}
+
+	/**
+	 * @return failure of last periodic reload or null if it succeeded
+	 */
+	public Exception getLastFailure() {
+		return _lastFailure;
+	}
+
+	/**
+	 * @see MySqlCollatorFactory#getCollator(String, String)
+	 */
+	public MySqlCollator getCollator(final String charset, final String collation) {
+		return getFactory().getCollator(charset, collation);
+	}
+
+	public File getDirectory() {
+		return _dir;
+	}
+
+	@Override
+	public String toString() {
+		return "ReloadingMySqlCollatorFactory [dir=" + _dir + ", generation=" + getGeneration() + "]";
+	}
+
+	private static final class CharsetFile {
+		private final long _lastModified;
+		private final long _length;
+		private final long _checksum;
+		private final Map<String, MySqlCharset> _charsets;
+
+		private CharsetFile(final long lastModified, final long length, final long checksum,
+				final Map<String, MySqlCharset> charsets) {
+			_lastModified = lastModified;
+			_length = length;
+			_checksum = checksum;
+			_charsets = charsets;
+		}
+	}
+
+	/**
+	 * factory of a single generation
+	 */
+	private static final class Snapshot {
+		private final long _generation;
+		private final MySqlCollatorFactory _factory;
+		private final long _time;
+
+		private Snapshot(final long generation, final Map<String, MySqlCharset> charsets, final long time) {
+			_generation = generation;
+			_factory = new MySqlCollatorFactory(charsets);
+			_time = time;
+		}
+
+		public long getGeneration() {
+			return _generation;
+		}
+
+		public MySqlCollatorFactory getFactory() {
+			return _factory;
+		}
+
+		public long getTime() {
+			return _time;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counter striped over several cells selected by thread
+ */
+final class StripedCounter {
+
+	/**
+	 * longs per 64 byte cache line
+	 */
+	private static final int PADDING = 8;
+
+	private static final int STRIPES = stripes();
+
+	private final AtomicLongArray _cells = new AtomicLongArray(STRIPES * PADDING);
+
+	private static int stripes() {
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(final long delta) {
+		_cells.addAndGet(cell(), delta);
+	}
+
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < _cells.length(); i += PADDING) {
+			sum += _cells.get(i);
+		}
+		return sum;
+	}
+
+	private static int cell() {
+		final long id = Thread.currentThread().getId();
+		final int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
@@ -28,6 +28,14 @@ public class UnmappableCharacterException extends RuntimeException {
 		_character = character;
 	}
 
+	/**
+	 * unmappable characters are frequent and expected, hence no stack trace
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+
 	public MySqlCharset getCharset() {
 		return _charset;
 	}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+/**
+ * how a {@link MySqlCollator} treats characters unmappable by its charset
+ * 
+ * @see MySqlCollator#withUnmappablePolicy(UnmappableCharacterPolicy)
+ */
+public enum UnmappableCharacterPolicy {
+
+	/**
+	 * throw {@link UnmappableCharacterException} (default)
+	 */
+	FAIL,
+
+	/**
+	 * use weight of '?', as MySQL replaces unmappable characters on insert
+	 */
+	REPLACE,
+
+	/**
+	 * use lowest possible weight
+	 */
+	MIN,
+
+	/**
+	 * use highest possible weight
+	 */
+	MAX,
+
+	/**
+	 * ignore unmappable characters
+	 */
+	SKIP;
+}
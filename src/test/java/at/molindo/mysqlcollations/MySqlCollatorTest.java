@@ -19,15 +19,44 @@ package at.molindo.mysqlcollations;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
 import java.text.CollationKey;
 import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.commons.digester.ObjectCreateRule;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
+import at.molindo.mysqlcollations.xml.CharsetXmlDigester;
 import at.molindo.utils.data.SerializationUtils;
 import at.molindo.utils.io.CharsetUtils;
 
@@ -82,6 +111,1160 @@ public class MySqlCollatorTest {
 		assertFalse(CharsetUtils.is("Slim\u2019s", CharsetUtils.ISO_8859_1));
 	}
 
+	@Test
+	public void testCompileLike() {
+		assertTrue(DEFAULT.compileLike("foo%").matches("FOObar"));
+		assertTrue(DEFAULT.compileLike("%bar").matches("fooBAR"));
+		assertTrue(DEFAULT.compileLike("f_o%b%r").matches("foobar"));
+		assertTrue(DEFAULT.compileLike("%%").matches(""));
+		assertTrue(DEFAULT.compileLike("%o%o%").matches("foo"));
+		assertFalse(DEFAULT.compileLike("%o%o%o%").matches("foo"));
+		assertFalse(DEFAULT.compileLike("foo").matches("foo "));
+		assertFalse(DEFAULT.compileLike("f_").matches("foo"));
+		assertTrue(DEFAULT.compileLike("100\\%").matches("100%"));
+		assertFalse(DEFAULT.compileLike("100\\%").matches("1000"));
+		assertTrue(DEFAULT.compileLike("a|_%", '|').matches("a_b"));
+		assertFalse(DEFAULT.compileLike("a|_%", '|').matches("ab"));
+		assertTrue(GERMAN.compileLike("fo_b%").matches("fo\u00F6bar"));
+		assertTrue(GERMAN.compileLike("%\u00D6%").matches("foobar"));
+		assertTrue(DEFAULT.compileLike("foo_").matches("foo\u263A"));
+	}
+
+	@Test
+	public void testCompiledUnmappablePolicy() {
+		final String string = "x\u263Ay";
+		for (final UnmappableCharacterPolicy policy : UnmappableCharacterPolicy.values()) {
+			final MySqlCollator collator = GERMAN.withUnmappablePolicy(policy);
+			if (policy == UnmappableCharacterPolicy.FAIL) {
+				try {
+					collator.compileLike("x?y").matches(string);
+					fail();
+				} catch (final UnmappableCharacterException e) {
+					// expected, like equals
+				}
+				try {
+					collator.compileSearch("y").indexOf(string);
+					fail();
+				} catch (final UnmappableCharacterException e) {
+					// expected
+				}
+				try {
+					collator.compileEditDistance("x?y").distance(string);
+					fail();
+				} catch (final UnmappableCharacterException e) {
+					// expected
+				}
+				continue;
+			}
+
+			// LIKE, LOCATE and edit distance agree with equals
+			for (final String other : new String[] { "x?y", "x\u0000y", "x\u00DEy", "xy", "xzy" }) {
+				final boolean equal = collator.equals(string, other);
+				final String msg = policy + ": " + other;
+				assertEquals(msg, equal, collator.compileLike(other).matches(string));
+				assertEquals(msg, equal, collator.compileLike(string).matches(other));
+				assertEquals(msg, equal, collator.compileLike("%" + other + "%").matches("a" + string + "b"));
+				assertEquals(msg, equal ? 1 : -1, collator.compileSearch(other).indexOf("a" + string + "b"));
+				assertEquals(msg, equal ? 1 : -1, collator.compileSearch(string).indexOf("a" + other + "b"));
+				assertEquals(msg, equal, collator.compileEditDistance(other).distance(string) == 0);
+				assertEquals(msg, equal, collator.compileEditDistance(string).distance(other) == 0);
+			}
+		}
+
+		final MySqlCollator replace = GERMAN.withUnmappablePolicy(UnmappableCharacterPolicy.REPLACE);
+		assertTrue(replace.equals("\u263A", "?"));
+		assertTrue(replace.compileLike("?").matches("\u263A"));
+		assertEquals(0, replace.compileEditDistance("?").distance("\u263A"));
+		assertEquals(0, replace.compileSearch("BAR").locate("fooba\u263A"));
+
+		// indexes refer to string including skipped characters
+		final MySqlCollator skip = GERMAN.withUnmappablePolicy(UnmappableCharacterPolicy.SKIP);
+		assertEquals(4, skip.compileSearch("bar").indexOf("\u263Afoob\u263Aar", 2));
+		assertEquals(6, skip.compileSearch("ar").indexOf("\u263Afoob\u263Aar", 2));
+		assertEquals(-1, skip.compileSearch("foo").indexOf("\u263Afoob\u263Aar", 2));
+		assertEquals(3, skip.compileEditDistance("fbr").distance("f\u263Aoob\u263Aar"));
+	}
+
+	@Test
+	public void testCompileSearch() {
+		final MySqlStringSearcher searcher = GERMAN.compileSearch("BAR");
+		assertEquals(4, searcher.locate("fo\u00F6b\u00E4r"));
+		assertEquals(4, searcher.locate("foobarbar"));
+		assertEquals(7, searcher.locate("foobarbar", 5));
+		assertEquals(0, searcher.locate("foobarbar", 8));
+		assertEquals(0, searcher.locate("foobarbar", 0));
+		assertEquals(-1, searcher.indexOf("ba"));
+
+		assertEquals(1, GERMAN.compileSearch("").locate("foo"));
+		assertEquals(4, GERMAN.compileSearch("").locate("foo", 4));
+		assertEquals(0, GERMAN.compileSearch("").locate("foo", 5));
+
+		final String string = "xxfo\u00F6barxx";
+		final byte[] bytes = new byte[string.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) GERMAN.getCharset().toIndex(string.charAt(i));
+		}
+		assertEquals(2, GERMAN.compileSearch("foobar").indexOf(bytes, 0, bytes.length));
+		assertEquals(-1, GERMAN.compileSearch("foobar").indexOf(bytes, 3, bytes.length - 3));
+		try {
+			GERMAN.compileSearch("foobar").indexOf(bytes, 1, Integer.MAX_VALUE);
+			fail();
+		} catch (final IndexOutOfBoundsException e) {
+			// expected
+		}
+
+		assertEquals(4, searcher.locate(new StringBuilder("fooBar")));
+		assertEquals(4, searcher.indexOf(CharBuffer.wrap("xfoob\u00E4r".toCharArray()), 2));
+	}
+
+	@Test
+	public void testReadTables() throws IOException, SAXException {
+		final File file = File.createTempFile("charsets", ".bin");
+		try {
+			MySqlCollatorFactory.parseDefaultDirectory().writeTables(file);
+
+			final MySqlCollatorFactory factory = MySqlCollatorFactory.readTables(file);
+			final MySqlCollator german = factory.getCollator("latin1", "latin1_german1_ci");
+			assertEquals("FOOBAR", german.normalize("fo\u00F6bar"));
+			assertTrue(factory.getDefaultCollator().equals("foobar", "Foobar"));
+			assertTrue(factory.getDefaultCollator().getCharset().isMappable("Slim\u2019s"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testInstrument() throws IOException, SAXException {
+		final MySqlCollatorStatistics statistics = new MySqlCollatorStatistics();
+		MySqlCollatorFactory.parseDefaultDirectory(statistics);
+		assertFalse(statistics.getParseNanos().isEmpty());
+
+		final MySqlCollator collator = DEFAULT.instrument(statistics);
+		assertTrue(collator.equals("foobar", "Foobar"));
+		assertTrue(collator.compare("foo", "bar") > 0);
+		assertEquals(k("foo"), collator.getCollationKey("FOO"));
+		try {
+			collator.compare("foo", "\u263A");
+			fail();
+		} catch (final UnmappableCharacterException e) {
+			// expected
+		}
+
+		assertEquals(3, statistics.getCompares());
+		assertEquals(22, statistics.getCompareCharacters());
+		assertEquals(1, statistics.getKeys());
+		assertEquals(1, statistics.getUnmappable(DEFAULT.getCharset().getName()));
+		assertEquals(2, statistics.getLengthHistogram()[3]);
+		assertEquals(4, statistics.getLengthHistogram()[2]);
+		assertEquals(1, statistics.getLengthHistogram()[1]);
+
+		final MySqlCollator replace = collator.withUnmappablePolicy(UnmappableCharacterPolicy.REPLACE);
+		assertTrue(replace instanceof InstrumentedMySqlCollator);
+		assertEquals(0, replace.compare("foo\u263A", "foo?"));
+		assertEquals(replace.hash("\u263A\u263A"), replace.hash("??"));
+		replace.abbreviatedKey("bar");
+		assertEquals(4, statistics.getUnmappable(DEFAULT.getCharset().getName()));
+		assertEquals(3, statistics.getHashes());
+
+		final MySqlCollator copy = SerializationUtils.copy(collator, MySqlCollator.class);
+		assertFalse(copy instanceof InstrumentedMySqlCollator);
+	}
+
+	@Test
+	public void testUnmappablePolicy() {
+		final String smiley = "foo\u263Abar";
+
+		try {
+			DEFAULT.compare(smiley, "foo?bar");
+			fail();
+		} catch (final UnmappableCharacterException e) {
+			assertEquals('\u263A', e.getCharacter());
+			assertEquals(0, e.getStackTrace().length);
+		}
+
+		final MySqlCollator replace = DEFAULT.withUnmappablePolicy(UnmappableCharacterPolicy.REPLACE);
+		assertTrue(replace.equals(smiley, "foo?bar"));
+		assertEquals(replace.getCollationKey("FOO?BAR"), replace.getCollationKey(smiley));
+		assertEquals("FOO?BAR", replace.normalize(smiley));
+
+		final MySqlCollator skip = DEFAULT.withUnmappablePolicy(UnmappableCharacterPolicy.SKIP);
+		assertTrue(skip.equals(smiley, "foobar"));
+		assertTrue(skip.equals("foobar\u263A", "foobar"));
+		assertTrue(skip.compare("foo\u263A", "foob") < 0);
+		assertEquals(skip.getCollationKey("foobar"), skip.getCollationKey(smiley));
+		assertEquals("FOOBAR", skip.normalize(smiley));
+
+		final MySqlCollator min = DEFAULT.withUnmappablePolicy(UnmappableCharacterPolicy.MIN);
+		assertTrue(min.compare(smiley, "foo bar") < 0);
+		assertTrue(min.compare(smiley, "foo\u263Abar") == 0);
+
+		final MySqlCollator max = DEFAULT.withUnmappablePolicy(UnmappableCharacterPolicy.MAX);
+		assertTrue(max.compare(smiley, "foozbar") > 0);
+		assertTrue(max.getCollationKey(smiley).compareTo(max.getCollationKey("foozbar")) > 0);
+	}
+
+	@Test
+	public void testCharsetProviderFailure() throws IOException {
+		assertTrue(MySqlCharsetProvider.load(new File("/does/not/exist")).isEmpty());
+
+		final File dir = File.createTempFile("charsets", "");
+		assertTrue(dir.delete() && dir.mkdir());
+		final File file = new File(dir, "broken.xml");
+		try {
+			write(file, "<charsets><charset".getBytes("UTF-8"));
+			assertTrue(MySqlCharsetProvider.load(dir).isEmpty());
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testUnmappablePrefix() {
+		final String source = "foo\u263Abar";
+		final String target = new String(source.toCharArray());
+		for (final MySqlCollator collator : new MySqlCollator[] { DEFAULT, GERMAN.getCollation().getCollator(),
+				DEFAULT.getCharset().getCollation("latin1_bin").getCollator() }) {
+			try {
+				collator.compare(source, target);
+				fail();
+			} catch (final UnmappableCharacterException e) {
+				// expected, consistent with hash
+			}
+			try {
+				collator.equals(new StringBuilder(source), target);
+				fail();
+			} catch (final UnmappableCharacterException e) {
+				// expected
+			}
+			try {
+				collator.compare(source.toCharArray(), 0, 7, target.toCharArray(), 0, 7);
+				fail();
+			} catch (final UnmappableCharacterException e) {
+				// expected
+			}
+			try {
+				collator.hash(source);
+				fail();
+			} catch (final UnmappableCharacterException e) {
+				// expected
+			}
+			try {
+				collator.getCollationKey(source);
+				fail();
+			} catch (final UnmappableCharacterException e) {
+				// expected
+			}
+
+			final MySqlCollator replace = collator.withUnmappablePolicy(UnmappableCharacterPolicy.REPLACE);
+			assertEquals(0, replace.compare(source, target));
+			assertEquals(replace.hash(source), replace.hash(target));
+			assertEquals(replace.getCollationKey(source), replace.getCollationKey(target));
+		}
+	}
+
+	@Test
+	public void testJavaCharset() throws CharacterCodingException {
+		final Charset latin1 = DEFAULT.getCharset().asJavaCharset();
+		assertEquals(latin1, Charset.forName("mysql-latin1"));
+
+		final ByteBuffer bytes = latin1.newEncoder().encode(CharBuffer.wrap("Slim\u2019s"));
+		assertEquals(6, bytes.remaining());
+		assertEquals(DEFAULT.getCharset().toIndex('\u2019'), bytes.get(4) & 0xFF);
+		assertEquals("Slim\u2019s", latin1.newDecoder().decode(bytes).toString());
+
+		assertEquals("Slim\u2019s", new String("Slim\u2019s".getBytes(latin1), latin1));
+		assertEquals("foo?", new String("foo\u263A".getBytes(latin1), latin1));
+
+		try {
+			latin1.newEncoder().encode(CharBuffer.wrap("foo\u263A"));
+			fail();
+		} catch (final java.nio.charset.UnmappableCharacterException e) {
+			assertEquals(1, e.getInputLength());
+		}
+	}
+
+	@Test
+	public void testSerialization() throws NotSerializableException {
+		final MySqlCollator skip = GERMAN.withUnmappablePolicy(UnmappableCharacterPolicy.SKIP);
+
+		final MySqlCollator copy = SerializationUtils.copy(skip, MySqlCollator.class);
+		assertEquals(UnmappableCharacterPolicy.SKIP, copy.getUnmappablePolicy());
+		assertEquals("FOOBAR", copy.normalize("fo\u00F6\u263Abar"));
+		assertTrue(copy.getCharset().getCollation(GERMAN.getCollation().getName()) == copy.getCollation());
+
+		final int size = SerializationUtils.serialize(skip).length;
+
+		MySqlCharsetRegistry.register(GERMAN.getCharset());
+		try {
+			assertTrue(SerializationUtils.serialize(skip).length < size / 2);
+			assertTrue(SerializationUtils.copy(GERMAN, MySqlCollator.class) == GERMAN);
+		} finally {
+			MySqlCharsetRegistry.unregister(GERMAN.getCharset());
+		}
+	}
+
+	@Test
+	public void testCollationKeyEncoding() throws IOException {
+		final MySqlCollationKey foo = DEFAULT.getCollationKey("foo");
+		final MySqlCollationKey foobar = DEFAULT.getCollationKey("foobar");
+		final MySqlCollationKey zero = DEFAULT.getCollationKey("foo\u0000");
+
+		assertTrue(compareUnsigned(foo.toByteArray(), foobar.toByteArray()) < 0);
+		assertTrue(compareUnsigned(foo.toDelimitedByteArray(), zero.toDelimitedByteArray()) < 0);
+		assertTrue(compareUnsigned(zero.toDelimitedByteArray(), foobar.toDelimitedByteArray()) < 0);
+		assertEquals(0, compareUnsigned(foo.toByteArray(), foobar.toByteArray(3)));
+
+		assertEquals(zero, MySqlCollationKey.fromDelimitedByteArray(zero.toDelimitedByteArray()));
+		assertEquals(foobar, MySqlCollationKey.fromByteArray(foobar.toByteArray()));
+		assertFalse(MySqlCollationKey.fromByteArray(foobar.toByteArray()).hasSourceString());
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		foobar.writeTo(new DataOutputStream(bytes));
+		assertEquals(7, bytes.size());
+		final MySqlCollationKey read = MySqlCollationKey.readFrom(new DataInputStream(new ByteArrayInputStream(bytes
+				.toByteArray())));
+		assertEquals(foobar, read);
+		assertFalse(read.equals(foo.withoutSourceString()));
+
+		final MySqlCollationKey copy = SerializationUtils.copy(foobar, MySqlCollationKey.class);
+		assertEquals(foobar, copy);
+		assertEquals("foobar", copy.getSourceString());
+		assertFalse(SerializationUtils.copy(foobar.withoutSourceString(), MySqlCollationKey.class).hasSourceString());
+	}
+
+	private static int compareUnsigned(final byte[] a, final byte[] b) {
+		for (int i = 0; i < a.length && i < b.length; i++) {
+			if (a[i] != b[i]) {
+				return (a[i] & 0xFF) - (b[i] & 0xFF);
+			}
+		}
+		return a.length - b.length;
+	}
+
+	@Test
+	public void testAbbreviatedKey() {
+		assertEquals(DEFAULT.abbreviatedKey("FOOBARBAZ"), DEFAULT.abbreviatedKey("foobarbaQ"));
+		assertTrue(DEFAULT.abbreviatedKey("foo") == DEFAULT.abbreviatedKey(new StringBuilder("FOO")));
+
+		final Random rnd = new Random(42);
+		final String[] strings = new String[1000];
+		for (int i = 0; i < strings.length; i++) {
+			final char[] chars = new char[rnd.nextInt(12)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = "aAbB \u00E4\u00C4\u00FF".charAt(rnd.nextInt(8));
+			}
+			strings[i] = new String(chars);
+		}
+
+		final String[] expected = strings.clone();
+		Arrays.sort(expected, DEFAULT);
+
+		final List<String> list = new ArrayList<String>(Arrays.asList(strings));
+		DEFAULT.sort(list);
+		assertEquals(Arrays.asList(expected), list);
+	}
+
+	@Test
+	public void testCommonPrefix() {
+		final String prefix = "http://example.com/path/to/";
+		assertEquals(0, GERMAN.compare(prefix + "foo", new String(prefix + "fo\u00F6")));
+		assertTrue(GERMAN.compare(prefix + "foo", prefix + "FOOBAR") < 0);
+		assertTrue(GERMAN.compare(prefix + "b", prefix) > 0);
+		assertEquals(0, GERMAN.compare(new StringBuilder(prefix), prefix));
+		assertTrue(GERMAN.equals("x" + prefix, "X" + prefix));
+
+		final char[] chars = (prefix + prefix + "x").toCharArray();
+		assertEquals(0, GERMAN.compare(chars, 0, prefix.length(), chars, prefix.length(), prefix.length()));
+		assertTrue(GERMAN.compare(chars, 0, prefix.length(), chars, prefix.length(), prefix.length() + 1) < 0);
+
+		// identical unmappable characters fail like hash
+		try {
+			GERMAN.compare("\u263Aa", "\u263A\u263B");
+			fail();
+		} catch (final UnmappableCharacterException e) {
+			assertEquals('\u263A', e.getCharacter());
+		}
+	}
+
+	@Test
+	public void testBinaryCollation() {
+		final MySqlCollator bin = DEFAULT.getCharset().getCollation("latin1_bin").getCollator();
+		assertTrue(bin.getCollation().isBinary());
+		assertTrue(bin.getCollation().isIdentity());
+		assertTrue(bin instanceof IdentityMySqlCollator);
+
+		// ordered by charset byte, i.e. cp1252 euro sign 0x80 before y diaeresis 0xFF
+		assertTrue(bin.compare("a\u20AC", "a\u00FF") < 0);
+		assertTrue(bin.compare("z", "\u20AC") < 0);
+		assertTrue(bin.compare("a", "A") > 0);
+		assertTrue(bin.compare("ab", "a") > 0);
+		assertEquals(Integer.signum(bin.compare("a\u20AC", "a\u00FF")), Integer.signum(bin.getCollationKey(
+				"a\u20AC").compareTo(bin.getCollationKey("a\u00FF"))));
+		assertEquals("Foo\u20AC", bin.normalize("Foo\u20AC"));
+
+		// no truncation of characters beyond 0xFF
+		try {
+			bin.compare("\u0141", "A");
+			fail();
+		} catch (final UnmappableCharacterException e) {
+			assertEquals('\u0141', e.getCharacter());
+		}
+		final MySqlCollator replace = bin.withUnmappablePolicy(UnmappableCharacterPolicy.REPLACE);
+		assertTrue(replace instanceof IdentityMySqlCollator);
+		assertEquals(0, replace.compare("\u0141", "?"));
+		assertEquals("?", replace.normalize("\u0141"));
+		assertEquals(0, bin.withUnmappablePolicy(UnmappableCharacterPolicy.SKIP).compare("a\u0141", "a"));
+	}
+
+	@Test
+	public void testGeneratedCollator() {
+		final MySqlCollation collation = GERMAN.getCollation();
+		assertEquals("Latin1German1CiCollator", MySqlCollatorGenerator.toClassName(collation));
+
+		final MySqlCollator generated = MySqlCollatorGenerator.compile(collation);
+		assertEquals(collation, generated.getCollation());
+
+		final Random rnd = new Random(42);
+		final String chars = "aAbB \u00E4\u00C4\u00F6\u00FF\u20AC";
+		for (int i = 0; i < 10000; i++) {
+			final String s = random(rnd, chars, 10), t = random(rnd, chars, 10);
+			assertEquals(Integer.signum(GERMAN.compare(s, t)), Integer.signum(generated.compare(s, t)));
+		}
+
+		try {
+			generated.compare("fooo", "foo\u263A");
+			fail();
+		} catch (final UnmappableCharacterException e) {
+			assertEquals('\u263A', e.getCharacter());
+		}
+		try {
+			generated.compare("foo\u263Ab", new String("foo\u263Ab"));
+			fail();
+		} catch (final UnmappableCharacterException e) {
+			// consistent with generic collator and hash
+		}
+		final MySqlCollator skip = generated.withUnmappablePolicy(UnmappableCharacterPolicy.SKIP);
+		assertEquals(generated.getClass(), skip.getClass());
+		assertEquals(0, skip.compare("fo\u263Ao", "FOO"));
+		assertEquals(0, skip.compare("FOO", "foo\u263A"));
+
+		try {
+			MySqlCollatorGenerator.checkFingerprint(DEFAULT.getCollation(), collation.getName(), MySqlCollatorGenerator
+					.fingerprint(collation));
+			fail();
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+
+		try {
+			MySqlCollatorGenerator.main(new String[0]);
+			fail();
+		} catch (final IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("usage: "));
+		} catch (final Exception e) {
+			fail(e.toString());
+		}
+	}
+
+	private static String random(final Random rnd, final String chars, final int maxLength) {
+		final char[] buf = new char[rnd.nextInt(maxLength)];
+		for (int i = 0; i < buf.length; i++) {
+			buf[i] = chars.charAt(rnd.nextInt(chars.length()));
+		}
+		return new String(buf);
+	}
+
+	@Test
+	public void testNativeImageConfig() throws Exception {
+		final String base = "/META-INF/native-image/at.molindo/molindo-mysql-collations/";
+
+		// all classes created reflectively by digester must be registered
+		final String reflectConfig = resource(base + "reflect-config.json");
+		final java.lang.reflect.Field className = ObjectCreateRule.class.getDeclaredField("className");
+		className.setAccessible(true);
+		int created = 0;
+		for (final Object rule : new CharsetXmlDigester().getRules().rules()) {
+			if (rule instanceof ObjectCreateRule) {
+				final String name = (String) className.get(rule);
+				assertTrue(name + " not registered", reflectConfig.contains("\"" + name + "\""));
+				created++;
+			}
+		}
+		assertEquals(7, created);
+
+		// all registered classes must exist
+		final Matcher names = Pattern.compile("\"name\" : \"([^\"]+)\"").matcher(reflectConfig);
+		while (names.find()) {
+			Class.forName(names.group(1));
+		}
+		final Matcher initialized = Pattern.compile("(at\\.molindo\\.[\\w.]+)").matcher(
+				resource(base + "native-image.properties"));
+		while (initialized.find()) {
+			Class.forName(initialized.group(1), false, getClass().getClassLoader());
+		}
+		assertTrue(resource(base + "resource-config.json").contains(MySqlBundledCharsets.RESOURCE.substring(1)));
+
+		// bundled charsets
+		final File tables = File.createTempFile("charsets", ".tables");
+		try {
+			MySqlCollatorFactory.parseDefaultDirectory().writeTables(tables);
+			final MySqlCollatorFactory factory = MySqlBundledCharsets.load(new FileInputStream(tables));
+			assertEquals(0, factory.getCollator("latin1", "latin1_german1_ci").compare("foo", "FO\u00D6"));
+		} finally {
+			tables.delete();
+		}
+	}
+
+	@Test
+	public void testBundledCharsets() {
+		// only generated by build profile bundle-charsets
+		assumeTrue(MySqlBundledCharsets.isAvailable());
+
+		final MySqlCollation bundled = MySqlBundledCharsets.getFactory().getCollation("latin1", "latin1_german1_ci");
+		assertTrue(bundled.isEquivalent(GERMAN.getCollation()));
+		assertEquals(0, bundled.getCollator().compare("foo", "FO\u00D6"));
+		assertEquals(GERMAN.getCollationKey("M\u00FCller"), bundled.getCollator().getCollationKey("MULLER"));
+	}
+
+	private static String resource(final String name) throws IOException {
+		final InputStream in = MySqlCollatorTest.class.getResourceAsStream(name);
+		assertTrue(name, in != null);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			final byte[] buf = new byte[1024];
+			int read;
+			while ((read = in.read(buf)) != -1) {
+				out.write(buf, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toString("UTF-8");
+	}
+
+	@Test
+	public void testDictionary() {
+		final MySqlDictionary.Builder first = MySqlDictionary.builder(GERMAN).addAll(
+				new String[] { "foo", "bar", "FO\u00D6", "baz" });
+		final MySqlDictionary.Builder second = MySqlDictionary.builder(GERMAN).addAll(Arrays.asList("BAR", "qux"));
+		final MySqlDictionary dict = first.merge(second).build();
+
+		assertEquals(4, dict.size());
+		assertEquals(Arrays.asList("bar", "baz", "foo", "qux"), Arrays.asList(dict.decode(new int[] { 0, 1, 2, 3 })));
+		assertTrue(Arrays.equals(new int[] { 2, 0, 2, 3 }, dict.encode(new String[] { "fo\u00F3", "Bar", "FOO",
+				"QUX" })));
+		assertEquals(-1, dict.encode("quux"));
+		assertEquals(2, dict.getCount(0));
+		assertEquals(-3, dict.search("bob"));
+		assertEquals(1, dict.search("BAZ"));
+
+		try {
+			first.add("foo");
+			fail();
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		// NULL sorts first
+		final MySqlDictionary nulls = MySqlDictionary.build(GERMAN, Arrays.asList("b", null, "a", null));
+		assertEquals(3, nulls.size());
+		assertEquals(Arrays.asList(null, "a", "b"), Arrays.asList(nulls.decode(new int[] { 0, 1, 2 })));
+		assertEquals(0, nulls.encode((String) null));
+		assertEquals(2, nulls.getCount(0));
+		assertEquals(0, nulls.search(null));
+		assertEquals(-3, nulls.search("aa"));
+		assertEquals(-1, dict.encode((String) null));
+		assertEquals(-1, dict.search(null));
+
+		final MySqlGroupTable groups = new MySqlGroupTable(GERMAN);
+		groups.add("b");
+		groups.add(null);
+		groups.add("A");
+		assertEquals(Arrays.asList(null, "A", "b"), Arrays.asList(MySqlDictionary.build(GERMAN,
+				Arrays.asList(groups.getValues())).decode(new int[] { 0, 1, 2 })));
+
+		final Random rnd = new Random(42);
+		final String[] column = new String[1000];
+		for (int i = 0; i < column.length; i++) {
+			column[i] = random(rnd, "aAbB\u00E4\u00C4", 5);
+		}
+		final MySqlDictionary random = MySqlDictionary.build(GERMAN, Arrays.asList(column));
+		final int[] codes = random.encode(column);
+		for (int i = 1; i < column.length; i++) {
+			assertEquals(Integer.signum(GERMAN.compare(column[i - 1], column[i])), Integer.signum(codes[i - 1]
+					- codes[i]));
+		}
+	}
+
+	@Test
+	public void testCompositeKey() {
+		final MySqlCompositeKeyBuilder builder = new MySqlCompositeKeyBuilder(16);
+
+		final byte[] a = builder.appendPadSpace(GERMAN, "a").toByteArray();
+		assertTrue(Arrays.equals(a, builder.reset().appendPadSpace(GERMAN, "A  ").toByteArray()));
+		assertTrue(MySqlCompositeKeyBuilder.compare(builder.reset().appendPadSpace(GERMAN, "a\t").toByteArray(), a) < 0);
+		assertTrue(MySqlCompositeKeyBuilder.compare(builder.reset().append(GERMAN, "a\t").toByteArray(), builder
+				.reset().append(GERMAN, "a").toByteArray()) > 0);
+		assertTrue(MySqlCompositeKeyBuilder.compare(builder.reset().appendNull().toByteArray(), builder.reset()
+				.append(Long.MIN_VALUE).toByteArray()) < 0);
+		assertTrue(MySqlCompositeKeyBuilder.compare(builder.reset().desc().appendNull().toByteArray(), builder
+				.reset().desc().append(Long.MIN_VALUE).toByteArray()) > 0);
+		assertTrue(Arrays.equals(builder.reset().append(0.0).toByteArray(), builder.reset().append(-0.0)
+				.toByteArray()));
+
+		final Random rnd = new Random(42);
+		final String chars = "aAb \t\u0000\u00E4";
+		final Object[][] rows = new Object[2000][];
+		final byte[][] keys = new byte[rows.length][];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new Object[] { rnd.nextInt(10) == 0 ? null : random(rnd, chars, 20), random(rnd, chars, 4),
+					(long) rnd.nextInt(5) - 2, rnd.nextInt(10) == 0 ? null : rnd.nextInt(5) - 2.5 };
+			keys[i] = builder.reset().appendPadSpace(GERMAN, (String) rows[i][0]).desc()
+					.append(DEFAULT, (String) rows[i][1]).append((Long) rows[i][2]).desc()
+					.append((Double) rows[i][3]).toByteArray();
+		}
+
+		for (int i = 1; i < rows.length; i++) {
+			final Object[] x = rows[i - 1], y = rows[i];
+			int cmp = comparePadSpace(GERMAN, (String) x[0], (String) y[0]);
+			if (cmp == 0) {
+				cmp = -Integer.signum(DEFAULT.compare((String) x[1], (String) y[1]));
+			}
+			if (cmp == 0) {
+				cmp = ((Long) x[2]).compareTo((Long) y[2]);
+			}
+			if (cmp == 0) {
+				cmp = x[3] == null ? y[3] == null ? 0 : 1 : y[3] == null ? -1 : -((Double) x[3]).compareTo((Double) y[3]);
+			}
+			assertEquals(Integer.signum(cmp), Integer.signum(MySqlCompositeKeyBuilder.compare(keys[i - 1], keys[i])));
+		}
+	}
+
+	/**
+	 * NULL first, shorter string padded with spaces
+	 */
+	private static int comparePadSpace(final MySqlCollator collator, final String x, final String y) {
+		if (x == null || y == null) {
+			return x == null ? y == null ? 0 : -1 : 1;
+		}
+		final StringBuilder a = new StringBuilder(x), b = new StringBuilder(y);
+		while (a.length() < b.length()) {
+			a.append(' ');
+		}
+		while (b.length() < a.length()) {
+			b.append(' ');
+		}
+		return Integer.signum(collator.compare(a.toString(), b.toString()));
+	}
+
+	@Test
+	public void testInternPool() throws InterruptedException {
+		final MySqlInternPool pool = new MySqlInternPool(GERMAN, 4);
+		final String wien = new String("Wien");
+		assertTrue(wien == pool.intern(wien));
+		assertTrue(wien == pool.intern("WIEN"));
+		assertTrue(wien == pool.intern(new StringBuilder("wien").toString()));
+		assertFalse(wien == pool.intern("Wien "));
+		assertEquals(null, pool.intern((String) null));
+		assertEquals(2, pool.size());
+
+		final String[] values = new String[10000];
+		final Random rnd = new Random(42);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random(rnd, "aAbB\u00E4\u00C4", 8);
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final String[][] results = new String[4][];
+		for (int t = 0; t < results.length; t++) {
+			final int thread = t;
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					final String[] copy = values.clone();
+					pool.intern(copy);
+					results[thread] = copy;
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		for (int i = 0; i < values.length; i++) {
+			for (final String[] result : results) {
+				assertTrue(result[i] == results[0][i]);
+			}
+			assertTrue(pool.intern(values[i]) == results[0][i]);
+		}
+	}
+
+	@Test
+	public void testEditDistance() {
+		final MySqlEditDistance wien = GERMAN.compileEditDistance("Wien");
+		assertEquals(0, wien.distance("WIEN"));
+		assertEquals(1, wien.distance("Wiem"));
+		assertEquals(3, wien.distance("W"));
+		assertEquals(2, wien.distance("W", 1));
+		assertTrue(wien.matches("wein", 2));
+		assertFalse(wien.matches("wein", 1));
+		assertEquals(2, GERMAN.compileEditDistance("").distance("ab"));
+
+		final Random rnd = new Random(42);
+		final String chars = "aAbB\u00E4\u00C4c";
+		for (int i = 0; i < 500; i++) {
+			final String pattern = random(rnd, chars, i % 2 == 0 ? 20 : 150);
+			final String string = rnd.nextBoolean() ? random(rnd, chars, 150) : mutate(rnd, pattern, chars);
+			final int expected = levenshtein(GERMAN, pattern, string);
+			final MySqlEditDistance distance = GERMAN.compileEditDistance(pattern);
+			assertEquals(expected, distance.distance(string));
+			final int max = rnd.nextInt(10);
+			assertEquals(Math.min(expected, max + 1), distance.distance(string, max));
+		}
+	}
+
+	private static String mutate(final Random rnd, final String string, final String chars) {
+		final StringBuilder buf = new StringBuilder(string);
+		for (int edits = rnd.nextInt(5); edits > 0; edits--) {
+			final int pos = rnd.nextInt(buf.length() + 1);
+			final char c = chars.charAt(rnd.nextInt(chars.length()));
+			if (pos < buf.length() && rnd.nextBoolean()) {
+				buf.setCharAt(pos, c);
+			} else if (pos < buf.length() && rnd.nextBoolean()) {
+				buf.deleteCharAt(pos);
+			} else {
+				buf.insert(pos, c);
+			}
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * reference dynamic programming implementation
+	 */
+	private static int levenshtein(final MySqlCollator collator, final String a, final String b) {
+		int[] prev = new int[b.length() + 1];
+		int[] cur = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			prev[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			cur[0] = i;
+			for (int j = 1; j <= b.length(); j++) {
+				final int cost = collator.equals(a.substring(i - 1, i), b.substring(j - 1, j)) ? 0 : 1;
+				cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+			}
+			final int[] tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+		return prev[b.length()];
+	}
+
+	@Test
+	public void testJoin() throws InterruptedException {
+		final MySqlJoin join = new MySqlJoin(GERMAN);
+		final MySqlJoin.Key<String> key = new MySqlJoin.Key<String>() {
+
+			@Override
+			public CharSequence get(final String row) {
+				return row;
+			}
+		};
+
+		final List<String> left = Arrays.asList("bar", null, "FOO", "fo\u00F6", "qux");
+		final List<String> right = Arrays.asList("BAR", "baz", "foo", null, "QUX");
+		final List<String> matches = new ArrayList<String>();
+		final MySqlJoin.Listener<String, String> listener = new MySqlJoin.Listener<String, String>() {
+
+			@Override
+			public synchronized void matched(final String l, final String r) {
+				matches.add(l + "=" + r);
+			}
+		};
+
+		join.sortMergeJoin(left, key, right, key, listener);
+		assertEquals(Arrays.asList("bar=BAR", "FOO=foo", "fo\u00F6=foo", "qux=QUX"), matches);
+
+		try {
+			join.sortMergeJoin(Arrays.asList("foo", "bar"), key, right, key, listener);
+			fail();
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+
+		// compare hash join to nested loop join
+		final Random rnd = new Random(42);
+		final List<String> build = new ArrayList<String>();
+		final List<String> probe = new ArrayList<String>();
+		for (int i = 0; i < 20000; i++) {
+			build.add(random(rnd, "aAbB\u00E4\u00C4", 6));
+			probe.add(random(rnd, "aAbB\u00E4\u00C4", 6));
+		}
+		final Map<String, Integer> buildCounts = new HashMap<String, Integer>();
+		for (final String b : build) {
+			final String n = GERMAN.normalize(b);
+			buildCounts.put(n, buildCounts.containsKey(n) ? buildCounts.get(n) + 1 : 1);
+		}
+		long expected = 0;
+		for (final String p : probe) {
+			final Integer count = buildCounts.get(GERMAN.normalize(p));
+			expected += count == null ? 0 : count;
+		}
+
+		final AtomicLong count = new AtomicLong();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			join.hashJoin(build, key, probe, key, new MySqlJoin.Listener<String, String>() {
+
+				@Override
+				public void matched(final String b, final String p) {
+					assertTrue(GERMAN.equals(b, p));
+					count.incrementAndGet();
+				}
+			}, 8, executor);
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(expected, count.get());
+	}
+
+	@Test
+	public void testGroupTable() throws IOException, SAXException {
+		assertEquals(GERMAN.getCollationKey("fo\u00F6").hashCode(), GERMAN.hash("FOO"));
+
+		final MySqlGroupTable table = new MySqlGroupTable(GERMAN);
+		assertEquals(0, table.add("foo"));
+		assertEquals(1, table.add("bar"));
+		assertEquals(0, table.add("FO\u00D6"));
+		assertEquals(0, table.find("fo\u00F3"));
+		assertEquals(-1, table.find("baz"));
+		assertEquals(2, table.getCount(0));
+		assertEquals("foo", table.getValue(0));
+
+		// partial aggregation of two halves
+		final MySqlGroupTable first = new MySqlGroupTable(GERMAN, 1);
+		final MySqlGroupTable second = new MySqlGroupTable(GERMAN, 1);
+		for (int i = 0; i < 1000; i++) {
+			first.add("Value" + i % 100);
+			second.add("VALUE" + i % 150);
+		}
+		assertEquals(100, first.size());
+		final int[] groups = first.merge(second);
+		assertEquals(150, first.size());
+		assertEquals(groups[0], first.find("value0"));
+		assertEquals("Value0", first.getValue(groups[0]));
+		assertEquals("VALUE149", first.getValue(groups[149]));
+		assertEquals(10 + 7, first.getCount(first.find("value0")));
+
+		// all NULLs form a single group
+		assertEquals(-1, table.find(null));
+		assertEquals(2, table.add(null));
+		assertEquals(3, table.add("baz"));
+		assertEquals(2, table.add(null));
+		assertEquals(2, table.find(null));
+		assertEquals(2, table.getCount(2));
+		assertEquals(null, table.getValue(2));
+		for (int i = 0; i < 100; i++) {
+			// rehashing skips NULL group
+			table.add("value" + i);
+		}
+		assertEquals(2, table.find(null));
+		assertEquals(3, table.find("BAZ"));
+
+		final MySqlGroupTable nulls = new MySqlGroupTable(GERMAN);
+		nulls.add(null);
+		nulls.add("foo");
+		assertEquals(2, table.merge(nulls)[0]);
+		assertEquals(3, table.getCount(2));
+
+		try {
+			first.merge(new MySqlGroupTable(DEFAULT));
+			fail();
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+
+		// same collation of another factory
+		final MySqlGroupTable copy = new MySqlGroupTable(MySqlCollatorFactory.parseDefaultDirectory().getCollator(
+				"latin1", "latin1_german1_ci"));
+		assertTrue(copy.getCollator().getCollation() != GERMAN.getCollation());
+		copy.add("FOO");
+		assertEquals(0, table.merge(copy)[0]);
+	}
+
+	@Test
+	public void testCharSequence() {
+		final StringBuilder foo = new StringBuilder("fo\u00F6");
+		final CharBuffer bar = CharBuffer.wrap("xBARx", 1, 4);
+
+		assertEquals(0, GERMAN.compare(foo, "FOO"));
+		assertTrue(GERMAN.compare(foo, bar) > 0);
+		assertTrue(GERMAN.charSequenceComparator().compare(bar, foo) < 0);
+		assertTrue(GERMAN.equals(bar, "bar"));
+		assertFalse(GERMAN.equals(bar, "bars"));
+		assertEquals(GERMAN.getCollationKey("foo"), GERMAN.getCollationKey(foo));
+		assertFalse(GERMAN.getCollationKey(foo).hasSourceString());
+		assertEquals("FOO", GERMAN.normalize(foo));
+
+		final char[] chars = "xxfooBAR".toCharArray();
+		assertEquals(0, GERMAN.compare(chars, 2, 3, "FO\u00D6".toCharArray(), 0, 3));
+		assertTrue(GERMAN.compare(chars, 2, 3, chars, 5, 3) > 0);
+		assertTrue(GERMAN.compare(chars, 5, 2, chars, 5, 3) < 0);
+		assertTrue(GERMAN.equals(chars, 5, 3, "bar".toCharArray(), 0, 3));
+		assertEquals(GERMAN.getCollationKey("bar"), GERMAN.getCollationKey(chars, 5, 3));
+		assertEquals("BAR", GERMAN.normalize(chars, 5, 3));
+
+		try {
+			GERMAN.compare(chars, 6, 3, chars, 0, 3);
+			fail();
+		} catch (final IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCaseConversion() {
+		final MySqlCharset charset = DEFAULT.getCharset();
+		assertEquals('a', charset.toLower('A'));
+		assertEquals('A', charset.toUpper('a'));
+
+		assertEquals("foo \u00E4\u20AC\u4E2D", charset.toLowerCase(new StringBuilder("FoO \u00C4\u20AC\u4E2D")));
+		assertEquals("FOO \u00C4", charset.toUpperCase("foo \u00E4"));
+
+		final char[] chars = "xFOOx".toCharArray();
+		charset.toLowerCase(chars, 1, 3);
+		assertEquals("xfoox", new String(chars));
+
+		final byte[] bytes = new byte[] { 'F', 'o', (byte) 0xE4 };
+		charset.toUpperCase(bytes, 1, 2);
+		assertTrue(Arrays.equals(new byte[] { 'F', 'O', (byte) 0xC4 }, bytes));
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(3).put(bytes);
+		buffer.flip();
+		charset.toLowerCase(buffer);
+		assertEquals(ByteBuffer.wrap(new byte[] { 'f', 'o', (byte) 0xE4 }), buffer);
+
+		assertEquals(MySqlCharset.CTYPE_DIGIT | MySqlCharset.CTYPE_HEX, charset.classify("0123"));
+		assertEquals(MySqlCharset.CTYPE_UPPER, charset.classify("AB\u00C4") & MySqlCharset.CTYPE_UPPER);
+		assertEquals(0, charset.classify("AB\u4E2D"));
+		assertEquals(0, charset.classify("Ab") & MySqlCharset.CTYPE_UPPER);
+		assertEquals(MySqlCharset.CTYPE_DIGIT, charset.classify(new byte[] { '1', '2' }, 0, 2) & MySqlCharset.CTYPE_DIGIT);
+
+		final byte[] ctypes = new byte[2];
+		charset.classify("a1", ctypes, 0);
+		assertTrue(charset.isLowerCaseWordChar('a'));
+		assertEquals(charset.getCtypeValue('a'), ctypes[0]);
+		assertEquals(charset.getCtypeValue('1'), ctypes[1]);
+	}
+
+	@Test
+	public void testSketches() throws IOException, SAXException {
+		final MySqlBloomFilter filter = new MySqlBloomFilter(GERMAN, 1000, 0.01);
+		final MySqlBloomFilter other = new MySqlBloomFilter(GERMAN, 1000, 0.01);
+		for (int i = 0; i < 1000; i++) {
+			(i % 2 == 0 ? filter : other).add("value\u00F6" + i);
+		}
+		filter.merge(other);
+
+		int falsePositives = 0;
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(filter.mightContain(new StringBuilder("VALUEO" + i)));
+			if (filter.mightContain("other" + i)) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 50);
+
+		// hash count limited to what's serializable
+		final MySqlBloomFilter strict = new MySqlBloomFilter(GERMAN, 10, 1e-100);
+		assertEquals(255, strict.getHashCount());
+		strict.add("foo");
+		final MySqlBloomFilter strictCopy = MySqlBloomFilter.fromByteArray(strict.toByteArray(), GERMAN);
+		assertEquals(255, strictCopy.getHashCount());
+		assertTrue(strictCopy.mightContain("FOO"));
+
+		final MySqlBloomFilter copy = MySqlBloomFilter.fromByteArray(filter.toByteArray(), GERMAN);
+		assertTrue(copy.mightContain("Value\u00D61"));
+		assertEquals(filter.getBitCount(), copy.getBitCount());
+		try {
+			MySqlBloomFilter.fromByteArray(filter.toByteArray(), DEFAULT);
+			fail();
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+
+		final MySqlHyperLogLog hll = new MySqlHyperLogLog(GERMAN, 12);
+		final MySqlHyperLogLog hll2 = new MySqlHyperLogLog(GERMAN, 12);
+		assertEquals(0, hll.estimate());
+		for (int i = 0; i < 20000; i++) {
+			hll.add("value" + i);
+			hll2.add("VAL\u00DCE" + (i + 10000));
+		}
+		hll.merge(hll2);
+		final long estimate = MySqlHyperLogLog.fromByteArray(hll.toByteArray(), GERMAN).estimate();
+		assertTrue("estimate " + estimate, Math.abs(estimate - 30000) < 30000 * 0.05);
+
+		final MySqlHyperLogLog small = new MySqlHyperLogLog(GERMAN, 12);
+		for (int i = 0; i < 100; i++) {
+			small.add("foo" + i);
+			small.add("FOO" + i);
+		}
+		assertTrue(Math.abs(small.estimate() - 100) <= 2);
+
+		// equal tables of another factory, e.g. after reloading
+		final MySqlCollator reloaded = MySqlCollatorFactory.parseDefaultDirectory().getCollator("latin1",
+				"latin1_german1_ci");
+		assertFalse(reloaded.getCollation() == GERMAN.getCollation());
+		final MySqlHyperLogLog merged = new MySqlHyperLogLog(reloaded, 12);
+		merged.add("foo100");
+		merged.merge(small);
+		assertEquals(small.estimate() + 1, merged.estimate());
+		assertEquals(copy.getBitCount(), MySqlBloomFilter.fromByteArray(copy.toByteArray(), reloaded).getBitCount());
+	}
+
+	@Test
+	public void testZoneMap() throws IOException {
+		final Random rnd = new Random(42);
+		final String chars = "aAbB\u00E4 ";
+		int skipped = 0;
+		for (int block = 0; block < 200; block++) {
+			final MySqlZoneMap first = new MySqlZoneMap(GERMAN, 3, 6);
+			final MySqlZoneMap second = new MySqlZoneMap(GERMAN, 3, 6);
+			final String base = random(rnd, chars, 4);
+			final String[] values = new String[20];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = rnd.nextInt(10) == 0 ? null : base + random(rnd, chars, 4);
+				(i % 2 == 0 ? first : second).add(values[i]);
+			}
+			first.merge(second);
+			final MySqlZoneMap zoneMap = MySqlZoneMap.fromByteArray(first.toByteArray(), GERMAN);
+			assertEquals(values.length, zoneMap.getCount());
+
+			for (int q = 0; q < 20; q++) {
+				String lower = random(rnd, chars, 6), upper = random(rnd, chars, 6);
+				if (GERMAN.compare(lower, upper) > 0) {
+					final String tmp = lower;
+					lower = upper;
+					upper = tmp;
+				}
+				boolean contains = false;
+				for (final String value : values) {
+					if (value != null && GERMAN.compare(lower, value) <= 0 && GERMAN.compare(value, upper) <= 0) {
+						contains = true;
+					}
+				}
+				final boolean mayContain = zoneMap.mayContain(lower, upper);
+				assertTrue(!contains || mayContain);
+				if (!mayContain) {
+					skipped++;
+				}
+			}
+			for (final String value : values) {
+				assertTrue(value == null || zoneMap.mayContain(value.toUpperCase()));
+			}
+		}
+		assertTrue("skipped " + skipped, skipped > 1000);
+
+		final MySqlZoneMap zoneMap = new MySqlZoneMap(GERMAN);
+		assertFalse(zoneMap.mayContain(null, null));
+		zoneMap.add(null);
+		zoneMap.add("Wien");
+		zoneMap.add("wien");
+		zoneMap.add("Graz");
+		assertTrue(zoneMap.hasNulls());
+		assertEquals(2, zoneMap.getDistinctEstimate());
+		assertTrue(zoneMap.mayContain("GRAZ"));
+		assertFalse(zoneMap.mayContain("Amstetten", "Bregenz"));
+		assertTrue(zoneMap.mayContain("Linz", null));
+		assertFalse(zoneMap.mayContain("Zwettl", null));
+	}
+
+	@Test
+	public void testReloadingFactory() throws Exception {
+		final File dir = File.createTempFile("charsets", "");
+		assertTrue(dir.delete() && dir.mkdir());
+		final File file = new File(dir, "latin1.xml");
+		try {
+			final byte[] xml = read(new File(MySqlCollatorFactory.getDirectory(), "latin1.xml"));
+			write(file, xml);
+
+			final ReloadingMySqlCollatorFactory factory = new ReloadingMySqlCollatorFactory(dir);
+			final MySqlCollator collator = factory.getCollator("latin1", "latin1_german1_ci");
+			assertEquals(0, collator.compare("foo", "FO\u00D6"));
+			assertEquals(0, factory.getGeneration());
+			assertFalse(factory.reload());
+
+			write(file, xml);
+			assertTrue(file.setLastModified(file.lastModified() - 10000));
+			assertTrue(factory.reload());
+			assertEquals(1, factory.getGeneration());
+			assertTrue(collator != factory.getCollator("latin1", "latin1_german1_ci"));
+			assertFalse(factory.reload());
+
+			// same length and modification time, e.g. within mtime granularity
+			final long lastModified = file.lastModified();
+			final String content = new String(xml, "UTF-8");
+			final int map = content.indexOf("<map>", content.indexOf("\"latin1_german1_ci\"")) + "<map>".length();
+			final byte[] modified = (content.substring(0, map) + "\n01" + content.substring(map + 3))
+					.getBytes("UTF-8");
+			assertEquals(xml.length, modified.length);
+			write(file, modified);
+			assertTrue(file.setLastModified(lastModified));
+			assertTrue(factory.reload());
+			assertEquals(2, factory.getGeneration());
+			assertEquals(0, factory.getCollator("latin1", "latin1_german1_ci").compare("\u0000", "\u0001"));
+
+			assertTrue(file.delete());
+			assertTrue(factory.reload());
+			assertEquals(3, factory.getGeneration());
+			assertTrue(factory.getFactory().getCharsets().isEmpty());
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	private static byte[] read(final File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			final byte[] bytes = new byte[(int) file.length()];
+			in.readFully(bytes);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void write(final File file, final byte[] bytes) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testOrderVerifier() throws IOException, InterruptedException {
+		final byte[] golden = "1\ta\\tb\n2\tFOO\n2\tfo\u00F6\n3\tbar\n".getBytes("UTF-8");
+		final MySqlOrderVerifier.Golden g = MySqlOrderVerifier.read(new ByteArrayInputStream(golden), Charset
+				.forName("UTF-8"));
+		assertEquals(Arrays.asList("a\tb", "FOO", "fo\u00F6", "bar"), g.getValues());
+		assertTrue(Arrays.equals(new int[] { 1, 2, 2, 3 }, g.getRanks()));
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final List<MySqlOrderVerifier.Mismatch> mismatches = new MySqlOrderVerifier(GERMAN).verify(
+					g.getValues(), g.getRanks(), 10, executor);
+			assertEquals(3, mismatches.size());
+			assertEquals(2, mismatches.get(0).getIndex());
+			assertEquals("bar", mismatches.get(0).getTarget());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	// @Test
 	public void testCompareSpeed() {
 
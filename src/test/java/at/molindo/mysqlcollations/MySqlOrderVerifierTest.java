@@ -0,0 +1,172 @@
+/**
+ * Copyright 2010 Molindo GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package at.molindo.mysqlcollations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.xml.sax.SAXException;
+
+import at.molindo.mysqlcollations.MySqlOrderVerifier.Golden;
+import at.molindo.mysqlcollations.MySqlOrderVerifier.Mismatch;
+
+/**
+ * verifies ordering of collations against golden files at
+ * /golden/&lt;collation&gt;.txt
+ */
+@RunWith(Parameterized.class)
+public class MySqlOrderVerifierTest {
+
+	private static final int CORPUS_SIZE = 10000;
+	private static final int MAX_MISMATCHES = 10;
+
+	/**
+	 * collations with golden file, each must be available
+	 */
+	private static final Set<String> GOLDEN = new HashSet<String>(Arrays.asList("latin1_german1_ci",
+			"latin1_swedish_ci", "latin1_bin"));
+
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime()
+			.availableProcessors());
+
+	private final MySqlCollation _collation;
+
+	public MySqlOrderVerifierTest(final MySqlCollation collation) {
+		_collation = collation;
+	}
+
+	@Parameters
+	public static Collection<Object[]> collations() throws IOException, SAXException {
+		final List<Object[]> collations = new ArrayList<Object[]>();
+		final Set<String> missing = new HashSet<String>(GOLDEN);
+		for (final MySqlCharset charset : MySqlCollatorFactory.parseDefaultDirectory().getCharsets()) {
+			for (final MySqlCollation collation : charset.getCollations().values()) {
+				collations.add(new Object[] { collation });
+				missing.remove(collation.getName());
+			}
+		}
+		if (!missing.isEmpty()) {
+			throw new IllegalStateException("collations of golden files not available: " + missing);
+		}
+		return collations;
+	}
+
+	@AfterClass
+	public static void shutdown() {
+		EXECUTOR.shutdown();
+	}
+
+	/**
+	 * checks collator against a naive comparison of collation weights, hence
+	 * doesn't detect differences to MySQL but optimizations of the collator
+	 * breaking its ordering
+	 */
+	@Test
+	public void testConsistency() throws InterruptedException {
+		final List<String> values = corpus(new Random(_collation.getName().hashCode()));
+		final int[] ranks = MySqlOrderVerifier.rank(values, new Comparator<String>() {
+
+			@Override
+			public int compare(final String source, final String target) {
+				final int length = Math.min(source.length(), target.length());
+				for (int i = 0; i < length; i++) {
+					final int cmp = (_collation.getWeight(source.charAt(i)) & 0xFF)
+							- (_collation.getWeight(target.charAt(i)) & 0xFF);
+					if (cmp != 0) {
+						return cmp;
+					}
+				}
+				return source.length() - target.length();
+			}
+		});
+		assertNoMismatches(values, ranks);
+	}
+
+	@Test
+	public void testGolden() throws IOException, InterruptedException {
+		final InputStream in = getClass().getResourceAsStream("/golden/" + _collation.getName() + ".txt");
+		if (in == null) {
+			assertFalse("missing golden file of " + _collation.getName(), GOLDEN.contains(_collation.getName()));
+			return;
+		}
+		assertTrue("golden file not in GOLDEN: " + _collation.getName(), GOLDEN.contains(_collation.getName()));
+		try {
+			final Golden golden = MySqlOrderVerifier.read(in, _collation.getCharset().asJavaCharset());
+			assertNoMismatches(golden.getValues(), golden.getRanks());
+		} finally {
+			in.close();
+		}
+	}
+
+	private void assertNoMismatches(final List<String> values, final int[] ranks) throws InterruptedException {
+		final List<Mismatch> mismatches = new MySqlOrderVerifier(_collation.getCollator()).verify(values, ranks,
+				MAX_MISMATCHES, EXECUTOR);
+		assertTrue(_collation.getName() + ": " + mismatches, mismatches.isEmpty());
+	}
+
+	/**
+	 * random strings of mappable characters with many equal values and common
+	 * prefixes
+	 */
+	private List<String> corpus(final Random rnd) {
+		final MySqlCharset charset = _collation.getCharset();
+		final StringBuilder alphabet = new StringBuilder();
+		for (final char c : charset.getCharacters()) {
+			if (charset.isMappable(c)) {
+				alphabet.append(c);
+			}
+		}
+
+		final char[] small = new char[12];
+		for (int i = 0; i < small.length; i++) {
+			small[i] = alphabet.charAt(rnd.nextInt(alphabet.length()));
+		}
+
+		final List<String> values = new ArrayList<String>(CORPUS_SIZE);
+		while (values.size() < CORPUS_SIZE) {
+			final boolean useSmall = rnd.nextBoolean();
+			final char[] chars = new char[rnd.nextInt(useSmall ? 6 : 12)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = useSmall ? small[rnd.nextInt(small.length)] : alphabet.charAt(rnd.nextInt(alphabet
+						.length()));
+			}
+			final String value = new String(chars);
+			values.add(value);
+			values.add(charset.toUpperCase(value));
+			values.add(value + value);
+		}
+		return values;
+	}
+}